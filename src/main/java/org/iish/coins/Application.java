@@ -2,26 +2,40 @@ package org.iish.coins;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import org.iish.coins.config.AcceptAllTrustManager;
 import org.iish.coins.config.CoinsModule;
 import org.iish.coins.config.Config;
+import org.iish.coins.dataset.DatasetVersion;
 import org.iish.coins.dataset.Datasets;
+import org.iish.coins.dataset.DatasetsRefresher;
+import org.iish.coins.dataset.HttpTransport;
+import org.iish.coins.http.CompressedContent;
+import org.iish.coins.http.StaticAssets;
 import org.iish.coins.record.Csv;
-import org.iish.coins.record.Record;
+import org.iish.coins.record.MapHolder;
+import org.iish.coins.record.RecordSelection;
 import org.iish.coins.record.RecordsFilter;
 import org.iish.coins.record.RecordsHolder;
+import org.iish.coins.record.SeriesPoint;
+import org.iish.coins.record.TablePage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import spark.Request;
 import spark.Response;
 import spark.servlet.SparkApplication;
 
-import java.io.IOException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
 
 import static spark.Spark.*;
 
@@ -31,10 +45,15 @@ import static spark.Spark.*;
 public class Application implements SparkApplication {
     private static final Logger LOGGER = LoggerFactory.getLogger(Application.class);
     private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Gson STREAMING_GSON = new Gson();
+    private static final int STREAM_BUFFER_SIZE = 8192;
 
     private Config config;
     private RecordsFilter recordsFilter;
     private Datasets datasets;
+    private DatasetsRefresher datasetsRefresher;
+    private HttpTransport httpTransport;
+    private final StaticAssets staticAssets = new StaticAssets("/public", 60 * 60 * 24); // 1 day in seconds
 
     /**
      * Run the application from the command line with the packaged Jetty servlet container.
@@ -54,6 +73,15 @@ public class Application implements SparkApplication {
         AcceptAllTrustManager.init();
         setUpInjector();
         setUpPaths();
+        preload();
+    }
+
+    /**
+     * Stops the application.
+     */
+    @Override
+    public void destroy() {
+        datasetsRefresher.stop();
     }
 
     /**
@@ -64,32 +92,53 @@ public class Application implements SparkApplication {
         this.config = injector.getInstance(Config.class);
         this.recordsFilter = injector.getInstance(RecordsFilter.class);
         this.datasets = injector.getInstance(Datasets.class);
+        this.datasetsRefresher = injector.getInstance(DatasetsRefresher.class);
+        this.httpTransport = injector.getInstance(HttpTransport.class);
+    }
+
+    /**
+     * Starts loading the datasets and waits until they are loaded, so that the application is ready
+     * to serve data once initialized. If loading takes too long, it continues in the background.
+     */
+    private void preload() {
+        long start = System.currentTimeMillis();
+        datasetsRefresher.start();
+
+        try {
+            if (datasets.awaitLoaded(config.refresh.preloadTimeoutSeconds, TimeUnit.SECONDS))
+                LOGGER.info("Preloaded the datasets in {} ms.", System.currentTimeMillis() - start);
+            else
+                LOGGER.warn("The datasets are not loaded after {} seconds; continuing to load in the background.",
+                        config.refresh.preloadTimeoutSeconds);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
      * Sets up the various routes.
      */
     private void setUpPaths() {
-        staticFiles.location("/public");
-        staticFiles.expireTime(60 * 60 * 24); // 1 day in seconds
-
+        get("/health/live", this::live, GSON::toJson);
+        get("/health/ready", this::ready, GSON::toJson);
         get("/fields", this::fields, GSON::toJson);
         get("/geo/mints", this::geoMints);
         get("/geo/authorities", this::geoAuthorities);
-        get("/json", this::json, GSON::toJson);
+        get("/json", this::json);
+        get("/table", this::table);
+        get("/aggregate", this::aggregate);
+        get("/map", this::map);
         get("/csv", this::csv);
+        get("/", this::staticAsset);
+        get("/*", this::staticAsset);
 
+        // The data, GeoJSON and static routes write their responses and set their own headers before writing
         after((req, res) -> {
-            res.header("Content-Encoding", "gzip");
-
-            switch (req.pathInfo()) {
-                case "/csv":
-                    res.type("text/csv; charset=utf-8");
-                    res.header("Content-Disposition", "attachment;filename=mint.csv");
-                    break;
-                default:
-                    res.type("text/json; charset=utf-8");
-            }
+            res.header("Vary", "Accept-Encoding");
+            if (CompressedContent.acceptsGzip(req.headers("Accept-Encoding")))
+                res.header("Content-Encoding", "gzip");
+            res.type("text/json; charset=utf-8");
         });
 
         exception(Exception.class, (e, req, res) -> {
@@ -99,6 +148,47 @@ public class Application implements SparkApplication {
         });
     }
 
+    /**
+     * Returns whether the application is alive.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @return The status.
+     */
+    private Map<String, Object> live(Request request, Response response) {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("status", "UP");
+        return status;
+    }
+
+    /**
+     * Returns whether the application is ready to serve data, with the status of the loaded datasets.
+     * Responds with status 503 as long as no datasets are loaded.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @return The status.
+     */
+    private Map<String, Object> ready(Request request, Response response) {
+        DatasetVersion version = datasets.getCurrent();
+        boolean loaded = version.getLoadedAt() != null;
+        if (!loaded)
+            response.status(503);
+
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("status", loaded ? "READY" : "LOADING");
+        status.put("records", version.getRecords().size());
+        status.put("loadedAt", toString(version.getLoadedAt()));
+        status.put("ageSeconds", loaded ? Duration.between(version.getLoadedAt(), Instant.now()).getSeconds() : null);
+        status.put("lastCheckedAt", toString(datasets.getLastCheckedAt()));
+        status.put("lastRefreshError", datasets.getLastError());
+        status.put("lastRefreshErrorAt", toString(datasets.getLastErrorAt()));
+        status.put("queryCache", datasets.getQueryCache().getStatistics());
+        status.put("rollups", datasets.getRollups().getStatistics());
+        status.put("dataverse", httpTransport.getMetrics());
+        return status;
+    }
+
     /**
      * Returns the fields.
      *
@@ -111,51 +201,173 @@ public class Application implements SparkApplication {
     }
 
     /**
-     * Returns the mint houses GeoJSON.
+     * Serves the mint houses GeoJSON, compressed once per version of the datasets.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @return An empty body, or null if there is no GeoJSON.
+     * @throws IOException On I/O related problems.
+     */
+    private String geoMints(Request request, Response response) throws IOException {
+        return serve(datasets.getGeoMints(), request, response);
+    }
+
+    /**
+     * Serves the authorities GeoJSON, compressed once per version of the datasets.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @return An empty body, or null if there is no GeoJSON.
+     * @throws IOException On I/O related problems.
+     */
+    private String geoAuthorities(Request request, Response response) throws IOException {
+        return serve(datasets.getGeoAuthorities(), request, response);
+    }
+
+    /**
+     * Serves the requested static asset, compressed once.
      *
      * @param request  The request.
      * @param response The response.
-     * @return The GeoJSON.
+     * @return An empty body, or null if there is no such asset.
+     * @throws IOException On I/O related problems.
      */
-    private byte[] geoMints(Request request, Response response) {
-        return datasets.getGeoMints();
+    private String staticAsset(Request request, Response response) throws IOException {
+        return serve(staticAssets.get(request.pathInfo()), request, response);
     }
 
     /**
-     * Returns the authorities GeoJSON.
+     * Streams the requested data as compact JSON: a list of records and a list of values for each field.
+     * The records are written one by one straight to the response.
      *
      * @param request  The request.
      * @param response The response.
-     * @return The GeoJSON.
+     * @return An empty body, as the response is already written.
+     * @throws IOException On I/O related problems.
      */
-    private byte[] geoAuthorities(Request request, Response response) {
-        return datasets.getGeoAuthorities();
+    private String json(Request request, Response response) throws IOException {
+        RecordsHolder records = recordsFilter.getRecordsHolder(request);
+        try (Writer writer = openStream(request, response, "text/json; charset=utf-8")) {
+            STREAMING_GSON.toJson(records, RecordsHolder.class, new JsonWriter(writer));
+        }
+        return "";
     }
 
     /**
-     * Returns the requested data as JSON.
+     * Streams the requested page of data for a DataTables table in server-side processing mode as compact JSON.
      *
      * @param request  The request.
      * @param response The response.
-     * @return A list of records and a list of values for each field.
+     * @return An empty body, as the response is already written.
+     * @throws IOException On I/O related problems.
+     */
+    private String table(Request request, Response response) throws IOException {
+        TablePage page = recordsFilter.getTablePage(request);
+        try (Writer writer = openStream(request, response, "text/json; charset=utf-8")) {
+            STREAMING_GSON.toJson(page, TablePage.class, new JsonWriter(writer));
+        }
+        return "";
+    }
+
+    /**
+     * Streams the series of a chart on the requested data as compact JSON: for every point on the x axis,
+     * the total of every variable.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @return An empty body, as the response is already written.
+     * @throws IOException On I/O related problems.
      */
-    private RecordsHolder json(Request request, Response response) {
-        List<Record> records = recordsFilter.getRecords(request);
-        Map<String, Set<String>> values = recordsFilter.getValues(records);
-        Integer[] minAndMaxYear = recordsFilter.getMinAndMaxYear(records);
-        return new RecordsHolder(records, values, minAndMaxYear[0], minAndMaxYear[1]);
+    private String aggregate(Request request, Response response) throws IOException {
+        List<SeriesPoint> series = recordsFilter.getSeries(request);
+        try (Writer writer = openStream(request, response, "text/json; charset=utf-8")) {
+            STREAMING_GSON.toJson(series, List.class, new JsonWriter(writer));
+        }
+        return "";
     }
 
     /**
-     * Returns the requested data as CSV.
+     * Streams the coverage of the mint houses and the authorities on the map for the requested data as compact JSON,
+     * joined with the mint houses on the map once per version of the datasets.
      *
      * @param request  The request.
      * @param response The response.
-     * @return A string representing the CSV.
+     * @return An empty body, as the response is already written.
+     * @throws IOException On I/O related problems.
+     */
+    private String map(Request request, Response response) throws IOException {
+        MapHolder map = recordsFilter.getMap(request);
+        try (Writer writer = openStream(request, response, "text/json; charset=utf-8")) {
+            STREAMING_GSON.toJson(map, MapHolder.class, new JsonWriter(writer));
+        }
+        return "";
+    }
+
+    /**
+     * Streams the requested data as CSV, record by record straight to the response.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @return An empty body, as the response is already written.
      * @throws IOException On I/O related problems.
      */
     private String csv(Request request, Response response) throws IOException {
-        List<Record> records = recordsFilter.getRecords(request);
-        return new Csv().write(records).toString();
+        RecordSelection records = recordsFilter.getRecords(request);
+        response.header("Content-Disposition", "attachment;filename=mint.csv");
+        try (Writer writer = openStream(request, response, "text/csv; charset=utf-8")) {
+            new Csv().write(records, writer);
+        }
+        return "";
+    }
+
+    /**
+     * Serves the given content, negotiating the encoding with the client.
+     *
+     * @param content  The content, or null.
+     * @param request  The request.
+     * @param response The response.
+     * @return An empty body, as the response is already written, or null if there is no content.
+     * @throws IOException On I/O related problems.
+     */
+    private static String serve(CompressedContent content, Request request, Response response) throws IOException {
+        if (content == null)
+            return null;
+
+        content.serve(request, response);
+        return "";
+    }
+
+    /**
+     * Sets the headers of the response and opens its body for writing, compressed if the client accepts gzip.
+     * Closing the writer completes the response.
+     *
+     * @param request     The request.
+     * @param response    The response.
+     * @param contentType The content type of the body.
+     * @return A buffered writer on the body of the response.
+     * @throws IOException On I/O related problems.
+     */
+    private static Writer openStream(Request request, Response response, String contentType) throws IOException {
+        response.type(contentType);
+
+        response.header("Vary", "Accept-Encoding");
+
+        OutputStream out = response.raw().getOutputStream();
+        if (CompressedContent.acceptsGzip(request.headers("Accept-Encoding"))) {
+            response.header("Content-Encoding", "gzip");
+            out = new GZIPOutputStream(out, STREAM_BUFFER_SIZE);
+        }
+
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE);
+    }
+
+    /**
+     * Formats the given moment.
+     *
+     * @param instant The moment.
+     * @return The moment in ISO-8601 format, or null.
+     */
+    private static String toString(Instant instant) {
+        return (instant != null) ? instant.toString() : null;
     }
 }
@@ -22,11 +22,20 @@ public class AcceptAllTrustManager implements X509TrustManager {
      * Initialize the trust manager.
      */
     public static void init() {
+        HttpsURLConnection.setDefaultSSLSocketFactory(getSslContext().getSocketFactory());
+    }
+
+    /**
+     * Creates an SSL context with the all trusting trust manager.
+     *
+     * @return The SSL context.
+     */
+    public static SSLContext getSslContext() {
         try {
             TrustManager[] trustManagers = new TrustManager[]{new AcceptAllTrustManager()};
             SSLContext sslContext = SSLContext.getInstance("SSL");
             sslContext.init(null, trustManagers, new SecureRandom());
-            HttpsURLConnection.setDefaultSSLSocketFactory(sslContext.getSocketFactory());
+            return sslContext;
         }
         catch (NoSuchAlgorithmException | KeyManagementException e) {
             throw new RuntimeException("Failure to set up an all trusting trust manager.", e);
@@ -1,5 +1,6 @@
 package org.iish.coins.config;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -8,12 +9,19 @@ import java.util.Map;
 public class Config {
     public Dataverse dataverse;
     public Datasets datasets;
+    public Refresh refresh = new Refresh();
+    public Snapshot snapshot;
+    public Loading loading = new Loading();
+    public Cache cache;
+    public Rollups rollups;
     public Map<String, String> fields;
 
     public static class Dataverse {
         public String url;
-        public int connectTimeoutMs;
-        public int readTimeoutMs;
+        public int connectTimeoutMs = 5000;
+        public int readTimeoutMs = 10000;
+        public int maxRetries = 3;
+        public int retryBackoffMs = 500;
     }
 
     public static class Datasets {
@@ -27,4 +35,28 @@ public class Config {
         public String pid;
         public String label;
     }
+
+    public static class Refresh {
+        public int intervalMinutes = 1440;
+        public int jitterMinutes = 30;
+        public int failureBackoffMinutes = 5;
+        public int preloadTimeoutSeconds = 120;
+    }
+
+    public static class Snapshot {
+        public String path;
+    }
+
+    public static class Loading {
+        public int parallelism = 4;
+        public int maxConcurrentDownloads = 4;
+    }
+
+    public static class Cache {
+        public int maxMegabytes;
+    }
+
+    public static class Rollups {
+        public List<String> dimensions;
+    }
 }
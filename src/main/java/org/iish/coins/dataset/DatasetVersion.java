@@ -0,0 +1,136 @@
+package org.iish.coins.dataset;
+
+import org.iish.coins.http.CompressedContent;
+import org.iish.coins.record.GeoModel;
+import org.iish.coins.record.RecordStore;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Immutable version of all datasets obtained from Dataverse, loaded together and swapped in as a whole.
+ */
+public class DatasetVersion {
+    public static final String COINS = "coins";
+    public static final String WAGES = "wages";
+    public static final String GEO_MINTS = "geoMints";
+    public static final String GEO_AUTHORITIES = "geoAuthorities";
+
+    private static final String GEO_CONTENT_TYPE = "text/json; charset=utf-8";
+
+    static final DatasetVersion EMPTY =
+            new DatasetVersion(RecordStore.EMPTY, null, null, Collections.emptyMap(), null);
+
+    private final RecordStore records;
+    private final CompressedContent geoMints;
+    private final CompressedContent geoAuthorities;
+    private final GeoModel geoModel;
+    private final Map<String, DataverseFile> files;
+    private final Instant loadedAt;
+
+    /**
+     * Creates a version of the datasets. The GeoJSON is compressed right away, so it is compressed only once,
+     * and the mint houses are parsed into the model of the map.
+     *
+     * @param records        The coin records.
+     * @param geoMints       The GeoJSON with the mint houses.
+     * @param geoAuthorities The GeoJSON with the authorities.
+     * @param files          The Dataverse files this version was loaded from, by dataset.
+     * @param loadedAt       When this version was loaded.
+     */
+    public DatasetVersion(RecordStore records, byte[] geoMints, byte[] geoAuthorities,
+                          Map<String, DataverseFile> files, Instant loadedAt) {
+        this.records = records;
+        this.geoMints = (geoMints != null) ? CompressedContent.of(geoMints, GEO_CONTENT_TYPE, true, null) : null;
+        this.geoAuthorities = (geoAuthorities != null)
+                ? CompressedContent.of(geoAuthorities, GEO_CONTENT_TYPE, true, null) : null;
+        this.geoModel = GeoModel.parse(geoMints);
+        this.files = Collections.unmodifiableMap(files);
+        this.loadedAt = loadedAt;
+    }
+
+    /**
+     * Returns the coin records.
+     *
+     * @return The coin records.
+     */
+    public RecordStore getRecords() {
+        return records;
+    }
+
+    /**
+     * Returns the GeoJSON with the mint houses.
+     *
+     * @return The GeoJSON.
+     */
+    public byte[] getGeoMints() {
+        return (geoMints != null) ? geoMints.getContent() : null;
+    }
+
+    /**
+     * Returns the GeoJSON with the mint houses, compressed.
+     *
+     * @return The compressed GeoJSON.
+     */
+    public CompressedContent getCompressedGeoMints() {
+        return geoMints;
+    }
+
+    /**
+     * Returns the GeoJSON with the authorities.
+     *
+     * @return The GeoJSON.
+     */
+    public byte[] getGeoAuthorities() {
+        return (geoAuthorities != null) ? geoAuthorities.getContent() : null;
+    }
+
+    /**
+     * Returns the GeoJSON with the authorities, compressed.
+     *
+     * @return The compressed GeoJSON.
+     */
+    public CompressedContent getCompressedGeoAuthorities() {
+        return geoAuthorities;
+    }
+
+    /**
+     * Returns the model of the map, parsed from the GeoJSON with the mint houses.
+     *
+     * @return The model of the map.
+     */
+    public GeoModel getGeoModel() {
+        return geoModel;
+    }
+
+    /**
+     * Returns the Dataverse files this version was loaded from.
+     *
+     * @return The Dataverse files, by dataset ({@link #COINS}, {@link #WAGES}, {@link #GEO_MINTS}
+     * and {@link #GEO_AUTHORITIES}).
+     */
+    public Map<String, DataverseFile> getFiles() {
+        return files;
+    }
+
+    /**
+     * Determines whether the given dataset of this version was loaded from the same content as the given file.
+     *
+     * @param dataset The dataset.
+     * @param file    The file in Dataverse.
+     * @return True if the content of the dataset is unchanged.
+     */
+    public boolean hasSameContent(String dataset, DataverseFile file) {
+        return (file != null) && file.hasSameContent(files.get(dataset));
+    }
+
+    /**
+     * Returns when this version was loaded.
+     *
+     * @return The moment of loading, or null if nothing was loaded yet.
+     */
+    public Instant getLoadedAt() {
+        return loadedAt;
+    }
+}
@@ -1,19 +1,24 @@
 package org.iish.coins.dataset;
 
-import com.google.common.io.ByteStreams;
 import com.google.inject.Singleton;
 import org.iish.coins.config.Config;
-import org.iish.coins.record.Csv;
-import org.iish.coins.record.Record;
+import org.iish.coins.http.CompressedContent;
+import org.iish.coins.record.Column;
+import org.iish.coins.record.GeoModel;
+import org.iish.coins.record.QueryCache;
+import org.iish.coins.record.RecordStore;
+import org.iish.coins.record.Rollups;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import java.io.IOException;
-import java.io.InputStream;
-import java.time.LocalDate;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Singleton which obtains the required datasets from Dataverse.
@@ -22,106 +27,233 @@ import java.util.List;
 public class Datasets {
     private static final Logger LOGGER = LoggerFactory.getLogger(Datasets.class);
 
-    private final Config config;
-    private final DataverseApiClient dataverseApiClient;
+    private final DatasetsLoader datasetsLoader;
+    private final DatasetsSnapshot snapshot;
+    private final long maxCacheBytes;
+    private final List<Column> rollupDimensions = new ArrayList<>();
 
-    private List<Record> cachedCsv = new ArrayList<>();
-    private LocalDate dateCachedCsv;
+    private final CountDownLatch loaded = new CountDownLatch(1);
 
-    private byte[] cachedGeoMints;
-    private LocalDate dateCachedGeoMints;
-
-    private byte[] cachedGeoAuthorities;
-    private LocalDate dateCachedGeoAuthorities;
+    private volatile DatasetVersion current = DatasetVersion.EMPTY;
+    private volatile QueryCache queryCache = new QueryCache(RecordStore.EMPTY, GeoModel.EMPTY, 0);
+    private volatile Rollups rollups = Rollups.build(RecordStore.EMPTY, Collections.emptyList());
+    private volatile Instant lastCheckedAt;
+    private volatile Instant lastErrorAt;
+    private volatile String lastError;
 
     /**
-     * Uses the provided configuration and Dataverse API client to obtain the datasets.
+     * Uses the provided loader to obtain the datasets from Dataverse.
      *
-     * @param config             The configuration.
-     * @param dataverseApiClient The Dataverse API client.
+     * @param config         The configuration.
+     * @param datasetsLoader The loader of the datasets.
+     * @param snapshot       The snapshot of the last loaded datasets.
      */
     @Inject
-    public Datasets(Config config, DataverseApiClient dataverseApiClient) {
-        this.config = config;
-        this.dataverseApiClient = dataverseApiClient;
+    public Datasets(Config config, DatasetsLoader datasetsLoader, DatasetsSnapshot snapshot) {
+        this.datasetsLoader = datasetsLoader;
+        this.snapshot = snapshot;
+        this.maxCacheBytes = (config.cache != null) ? config.cache.maxMegabytes * 1024L * 1024L : 0;
+
+        if ((config.rollups != null) && (config.rollups.dimensions != null)) {
+            for (String dimension : config.rollups.dimensions) {
+                Column column = Column.forName(dimension);
+                if ((column != null) && (column.getType() == Column.Type.STRING))
+                    rollupDimensions.add(column);
+                else
+                    LOGGER.warn("Cannot roll up by '{}', as it is not a text field.", dimension);
+            }
+        }
     }
 
     /**
-     * Obtains the list of records from the Dataverse CSV file.
+     * Obtains the records from the cached Dataverse CSV file.
      *
-     * @return A list of coin records.
+     * @return The coin records.
      */
-    public List<Record> getCsv() {
-        if ((dateCachedCsv == null) || dateCachedCsv.isBefore(LocalDate.now().minusDays(1))) {
-            try {
-                DataverseFile coinsFile =
-                        dataverseApiClient.getFileForPidAndLabel(config.datasets.coins.pid, config.datasets.coins.label);
-                DataverseFile wagesFile =
-                        dataverseApiClient.getFileForPidAndLabel(config.datasets.wages.pid, config.datasets.wages.label);
-
-                InputStream coinsStream = dataverseApiClient.getFileById(coinsFile.getId());
-                InputStream wagesStream = dataverseApiClient.getFileById(wagesFile.getId());
-
-                cachedCsv = new Csv().parse(coinsStream, wagesStream);
-                dateCachedCsv = LocalDate.now();
-            }
-            catch (DataverseException de) {
-                LOGGER.error("Failed to load the data from Dataverse!", de);
-            }
-            catch (IOException ioe) {
-                LOGGER.error("Failed to read the CSV file!", ioe);
+    public RecordStore getCsv() {
+        return current.getRecords();
+    }
+
+    /**
+     * Obtains the cached GeoJSON with the authorities from Dataverse.
+     *
+     * @return The compressed GeoJSON.
+     */
+    public CompressedContent getGeoAuthorities() {
+        return current.getCompressedGeoAuthorities();
+    }
+
+    /**
+     * Obtains the cached GeoJSON with the mint houses from Dataverse.
+     *
+     * @return The compressed GeoJSON.
+     */
+    public CompressedContent getGeoMints() {
+        return current.getCompressedGeoMints();
+    }
+
+    /**
+     * Obtains the cache of query results on the current records. The cache holds the records and the map
+     * it caches results of, so queries on the cache remain consistent while a new version of the datasets
+     * is swapped in.
+     *
+     * @return The query cache.
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Obtains the rollups of the current records, by year and by each of the configured dimensions.
+     *
+     * @return The rollups.
+     */
+    public Rollups getRollups() {
+        return rollups;
+    }
+
+    /**
+     * Obtains the currently cached version of the datasets.
+     *
+     * @return The current version.
+     */
+    public DatasetVersion getCurrent() {
+        return current;
+    }
+
+    /**
+     * Determines whether any datasets are loaded, either from Dataverse or from the snapshot.
+     *
+     * @return True if loaded.
+     */
+    public boolean isLoaded() {
+        return current.getLoadedAt() != null;
+    }
+
+    /**
+     * Waits until any datasets are loaded, either from Dataverse or from the snapshot.
+     *
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of the timeout.
+     * @return True if loaded, false if the timeout elapsed before.
+     * @throws InterruptedException When interrupted while waiting.
+     */
+    public boolean awaitLoaded(long timeout, TimeUnit unit) throws InterruptedException {
+        return loaded.await(timeout, unit);
+    }
+
+    /**
+     * Returns when the datasets were last successfully checked against Dataverse.
+     *
+     * @return The moment of the last successful refresh, or null if there was none yet.
+     */
+    public Instant getLastCheckedAt() {
+        return lastCheckedAt;
+    }
+
+    /**
+     * Returns the error of the last refresh, if it failed.
+     *
+     * @return The error message, or null if the last refresh was successful.
+     */
+    public String getLastError() {
+        return lastError;
+    }
+
+    /**
+     * Returns when the last refresh failed.
+     *
+     * @return The moment of the last failed refresh, or null if there was none yet.
+     */
+    public Instant getLastErrorAt() {
+        return lastErrorAt;
+    }
+
+    /**
+     * Loads the datasets from the snapshot on disk, if there is one and nothing is loaded yet.
+     *
+     * @return Whether the datasets were loaded from the snapshot.
+     */
+    public synchronized boolean loadSnapshot() {
+        if (!snapshot.isEnabled() || (current.getLoadedAt() != null))
+            return false;
+
+        try {
+            long start = System.currentTimeMillis();
+            DatasetVersion version = snapshot.load();
+            if (version != null) {
+                swap(version);
+                LOGGER.info("Loaded {} records from the snapshot {} in {} ms.",
+                        version.getRecords().size(), snapshot.getPath(), System.currentTimeMillis() - start);
+                return true;
             }
         }
-        return cachedCsv;
+        catch (IOException ioe) {
+            LOGGER.error("Failed to read the snapshot!", ioe);
+        }
+        return false;
     }
 
     /**
-     * Obtains the latest GeoJSON with the authorities from Dataverse.
+     * Loads the latest datasets from Dataverse. The new datasets are only swapped in
+     * after all of them have been loaded and parsed successfully; until then the cached datasets are served.
+     * Datasets of which the files in Dataverse have not changed are not downloaded again;
+     * if none of the files have changed, the refresh ends after obtaining the file metadata.
+     * Afterwards, the new datasets are written to the snapshot.
      *
-     * @return The GeoJSON.
+     * @throws DataverseException When not successful to obtain the datasets from Dataverse.
+     * @throws IOException        When I/O problems occur while reading the datasets.
      */
-    public byte[] getGeoAuthorities() {
-        if ((dateCachedGeoAuthorities == null) || dateCachedGeoAuthorities.isBefore(LocalDate.now().minusDays(1))) {
-            try {
-                DataverseFile geoAuthoritiesFile =
-                        dataverseApiClient.getFileForPidAndLabel(config.datasets.geoAuthorities.pid, config.datasets.geoAuthorities.label);
-                InputStream geoAuthorities = dataverseApiClient.getFileById(geoAuthoritiesFile.getId());
-
-                cachedGeoAuthorities = ByteStreams.toByteArray(geoAuthorities);
-                dateCachedGeoAuthorities = LocalDate.now();
-            }
-            catch (DataverseException de) {
-                LOGGER.error("Failed to load the data from Dataverse!", de);
-            }
-            catch (IOException ioe) {
-                LOGGER.error("Failed to read the GeoJSON file!", ioe);
+    public synchronized void refresh() throws DataverseException, IOException {
+        try {
+            long start = System.currentTimeMillis();
+
+            DatasetVersion previous = current;
+            DatasetVersion version = datasetsLoader.load(previous);
+            lastCheckedAt = Instant.now();
+            lastError = null;
+
+            if (version == previous) {
+                LOGGER.info("The datasets in Dataverse are unchanged; checked in {} ms.",
+                        System.currentTimeMillis() - start);
+                return;
             }
+
+            swap(version);
+            LOGGER.info("Loaded {} records from Dataverse in {} ms.",
+                    version.getRecords().size(), System.currentTimeMillis() - start);
+        }
+        catch (DataverseException | IOException | RuntimeException e) {
+            lastErrorAt = Instant.now();
+            lastError = e.getMessage();
+            throw e;
+        }
+
+        try {
+            snapshot.save(current);
+        }
+        catch (IOException ioe) {
+            LOGGER.error("Failed to write the snapshot!", ioe);
         }
-        return cachedGeoAuthorities;
     }
 
     /**
-     * Obtains the latest GeoJSON with the mint houses from Dataverse.
+     * Swaps in the given version of the datasets, together with an empty query cache and new rollups
+     * for its records.
      *
-     * @return The GeoJSON.
+     * @param version The new version.
      */
-    public byte[] getGeoMints() {
-        if ((dateCachedGeoMints == null) || dateCachedGeoMints.isBefore(LocalDate.now().minusDays(1))) {
-            try {
-                DataverseFile geoMintsFile =
-                        dataverseApiClient.getFileForPidAndLabel(config.datasets.geoMint.pid, config.datasets.geoMint.label);
-                InputStream geoMints = dataverseApiClient.getFileById(geoMintsFile.getId());
-
-                cachedGeoMints = ByteStreams.toByteArray(geoMints);
-                dateCachedGeoMints = LocalDate.now();
-            }
-            catch (DataverseException de) {
-                LOGGER.error("Failed to load the data from Dataverse!", de);
-            }
-            catch (IOException ioe) {
-                LOGGER.error("Failed to read the GeoJSON file!", ioe);
-            }
+    private void swap(DatasetVersion version) {
+        // The records remain the same if only the GeoJSON changed
+        if (rollups.getStore() != version.getRecords()) {
+            Rollups newRollups = Rollups.build(version.getRecords(), rollupDimensions);
+            LOGGER.info("Built the rollups of {} records in {} ms, holding an estimated {} KB.",
+                    version.getRecords().size(), newRollups.getBuildMillis(), newRollups.getSizeInBytes() / 1024);
+            rollups = newRollups;
         }
-        return cachedGeoMints;
+
+        queryCache = new QueryCache(version.getRecords(), version.getGeoModel(), maxCacheBytes);
+        current = version;
+        loaded.countDown();
     }
 }
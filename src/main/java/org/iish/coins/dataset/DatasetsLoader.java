@@ -0,0 +1,214 @@
+package org.iish.coins.dataset;
+
+import com.google.inject.Singleton;
+import org.iish.coins.config.Config;
+import org.iish.coins.record.ColumnStatistics;
+import org.iish.coins.record.Csv;
+import org.iish.coins.record.RecordStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads all datasets from Dataverse concurrently. The metadata of each distinct PID is obtained only once,
+ * after which all changed files are downloaded and parsed in parallel, with a limit on the number of
+ * concurrent downloads.
+ */
+@Singleton
+public class DatasetsLoader {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetsLoader.class);
+
+    private final Config config;
+    private final DataverseApiClient dataverseApiClient;
+    private final ExecutorService executor;
+
+    /**
+     * Uses the provided configuration and Dataverse API client to load the datasets.
+     *
+     * @param config             The configuration.
+     * @param dataverseApiClient The Dataverse API client.
+     */
+    @Inject
+    public DatasetsLoader(Config config, DataverseApiClient dataverseApiClient) {
+        this.config = config;
+        this.dataverseApiClient = dataverseApiClient;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, config.loading.maxConcurrentDownloads), runnable -> {
+            Thread thread = new Thread(runnable, "datasets-loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Loads the latest datasets from Dataverse. Datasets of which the files in Dataverse have not changed
+     * since the given previous version are not downloaded again, but taken over from the previous version.
+     *
+     * @param previous The previously loaded version of the datasets.
+     * @return The newly loaded version of the datasets, or the previous version if none of the files have changed.
+     * @throws DataverseException When not successful to obtain the datasets from Dataverse.
+     * @throws IOException        When I/O problems occur while reading the datasets.
+     */
+    public DatasetVersion load(DatasetVersion previous) throws DataverseException, IOException {
+        Map<String, Config.Dataset> datasets = new LinkedHashMap<>();
+        datasets.put(DatasetVersion.COINS, config.datasets.coins);
+        datasets.put(DatasetVersion.WAGES, config.datasets.wages);
+        datasets.put(DatasetVersion.GEO_MINTS, config.datasets.geoMint);
+        datasets.put(DatasetVersion.GEO_AUTHORITIES, config.datasets.geoAuthorities);
+
+        Map<String, DataverseFile> files = getFiles(datasets);
+
+        boolean csvUnchanged = previous.hasSameContent(DatasetVersion.COINS, files.get(DatasetVersion.COINS))
+                && previous.hasSameContent(DatasetVersion.WAGES, files.get(DatasetVersion.WAGES));
+        boolean geoMintsUnchanged =
+                previous.hasSameContent(DatasetVersion.GEO_MINTS, files.get(DatasetVersion.GEO_MINTS));
+        boolean geoAuthoritiesUnchanged =
+                previous.hasSameContent(DatasetVersion.GEO_AUTHORITIES, files.get(DatasetVersion.GEO_AUTHORITIES));
+
+        if (csvUnchanged && geoMintsUnchanged && geoAuthoritiesUnchanged)
+            return previous;
+
+        Csv csv = new Csv(config.loading.parallelism);
+
+        CompletableFuture<RecordStore.Builder> coinsFuture = csvUnchanged ? null
+                : download(files.get(DatasetVersion.COINS), csv::parseRecords);
+        CompletableFuture<Map<Integer, BigDecimal>> wagesFuture = csvUnchanged ? null
+                : download(files.get(DatasetVersion.WAGES), csv::parseWages);
+        CompletableFuture<byte[]> geoMintsFuture = geoMintsUnchanged
+                ? CompletableFuture.completedFuture(previous.getGeoMints())
+                : download(files.get(DatasetVersion.GEO_MINTS), InputStream::readAllBytes);
+        CompletableFuture<byte[]> geoAuthoritiesFuture = geoAuthoritiesUnchanged
+                ? CompletableFuture.completedFuture(previous.getGeoAuthorities())
+                : download(files.get(DatasetVersion.GEO_AUTHORITIES), InputStream::readAllBytes);
+
+        RecordStore records = previous.getRecords();
+        if (!csvUnchanged) {
+            records = csv.postProcess(join(coinsFuture), join(wagesFuture));
+            logStatistics(records);
+        }
+
+        return new DatasetVersion(records, join(geoMintsFuture), join(geoAuthoritiesFuture), files, Instant.now());
+    }
+
+    /**
+     * Logs the cardinality of each column of the loaded records and the memory saved by holding them in columns.
+     *
+     * @param records The loaded records.
+     */
+    private static void logStatistics(RecordStore records) {
+        long bytesSaved = 0;
+        for (ColumnStatistics statistics : records.getStatistics()) {
+            bytesSaved += statistics.getBytesSaved();
+            LOGGER.info("Column {}.", statistics);
+        }
+        LOGGER.info("Holding {} records in columns saved an estimated {} KB.", records.size(), bytesSaved / 1024);
+    }
+
+    /**
+     * Stops the threads used for loading.
+     */
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Obtains the Dataverse files for the given datasets. The metadata of each distinct PID is obtained
+     * only once, and the metadata of different PIDs is obtained concurrently.
+     *
+     * @param datasets The datasets by name.
+     * @return The Dataverse files by dataset name.
+     * @throws DataverseException When not successful to find the files in Dataverse.
+     * @throws IOException        When I/O problems occur.
+     */
+    private Map<String, DataverseFile> getFiles(Map<String, Config.Dataset> datasets)
+            throws DataverseException, IOException {
+        Map<String, CompletableFuture<List<DataverseFile>>> filesByPid = new HashMap<>();
+        for (Config.Dataset dataset : datasets.values()) {
+            filesByPid.computeIfAbsent(dataset.pid, pid -> CompletableFuture.supplyAsync(() -> {
+                try {
+                    return dataverseApiClient.getFilesForPid(pid);
+                }
+                catch (DataverseException de) {
+                    throw new CompletionException(de);
+                }
+            }, executor));
+        }
+
+        Map<String, DataverseFile> files = new HashMap<>();
+        for (Map.Entry<String, Config.Dataset> dataset : datasets.entrySet()) {
+            Config.Dataset config = dataset.getValue();
+            DataverseFile file = DataverseApiClient.getFileForLabel(join(filesByPid.get(config.pid)), config.label);
+            if (file == null)
+                throw new DataverseException("Could not find the file " + config.label + " for PID " + config.pid);
+            files.put(dataset.getKey(), file);
+        }
+
+        return files;
+    }
+
+    /**
+     * Downloads the given file and reads it using the given reader, without waiting for completion.
+     *
+     * @param file   The Dataverse file to download.
+     * @param reader The reader of the file.
+     * @param <T>    The type of the result of the reader.
+     * @return A future with the result of the reader.
+     */
+    private <T> CompletableFuture<T> download(DataverseFile file, Reader<T> reader) {
+        return CompletableFuture.supplyAsync(() -> {
+            long start = System.currentTimeMillis();
+            try (InputStream inputStream = dataverseApiClient.getFileById(file.getId())) {
+                T result = reader.read(inputStream);
+                LOGGER.info("Downloaded and read {} in {} ms.", file, System.currentTimeMillis() - start);
+                return result;
+            }
+            catch (DataverseException | IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Waits for the given future to complete and returns its result, rethrowing any failure.
+     *
+     * @param future The future.
+     * @param <T>    The type of the result.
+     * @return The result.
+     * @throws DataverseException When the future failed to obtain data from Dataverse.
+     * @throws IOException        When the future failed due to I/O problems.
+     */
+    private static <T> T join(CompletableFuture<T> future) throws DataverseException, IOException {
+        try {
+            return future.join();
+        }
+        catch (CompletionException ce) {
+            if (ce.getCause() instanceof DataverseException)
+                throw (DataverseException) ce.getCause();
+            if (ce.getCause() instanceof IOException)
+                throw (IOException) ce.getCause();
+            throw ce;
+        }
+    }
+
+    /**
+     * Reads the content of a file.
+     *
+     * @param <T> The type of the result.
+     */
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(InputStream inputStream) throws IOException;
+    }
+}
@@ -0,0 +1,116 @@
+package org.iish.coins.dataset;
+
+import com.google.inject.Singleton;
+import org.iish.coins.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Refreshes the datasets in the background, so that requests never have to wait for Dataverse.
+ * The currently cached datasets are served until a refresh has completed successfully.
+ */
+@Singleton
+public class DatasetsRefresher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatasetsRefresher.class);
+
+    private final Config config;
+    private final Datasets datasets;
+    private final DatasetsLoader datasetsLoader;
+    private final ScheduledExecutorService executor;
+
+    private int failures = 0;
+
+    /**
+     * Sets up the refresher for the given datasets.
+     *
+     * @param config         The configuration.
+     * @param datasets       The datasets to refresh.
+     * @param datasetsLoader The loader of the datasets.
+     */
+    @Inject
+    public DatasetsRefresher(Config config, Datasets datasets, DatasetsLoader datasetsLoader) {
+        this.config = config;
+        this.datasets = datasets;
+        this.datasetsLoader = datasetsLoader;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "datasets-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts refreshing the datasets. The datasets are first loaded from the snapshot, if there is one;
+     * the first refresh from Dataverse is then started immediately to revalidate them.
+     */
+    public void start() {
+        datasets.loadSnapshot();
+        schedule(0);
+    }
+
+    /**
+     * Stops refreshing the datasets.
+     */
+    public void stop() {
+        executor.shutdownNow();
+        datasetsLoader.stop();
+    }
+
+    /**
+     * Refreshes the datasets and schedules the next refresh.
+     */
+    private void refresh() {
+        try {
+            datasets.refresh();
+            failures = 0;
+        }
+        catch (DataverseException de) {
+            failures++;
+            LOGGER.error("Failed to load the data from Dataverse!", de);
+        }
+        catch (IOException | RuntimeException e) {
+            failures++;
+            LOGGER.error("Failed to read the datasets!", e);
+        }
+
+        schedule(getNextDelayMs());
+    }
+
+    /**
+     * Determines the delay until the next refresh. After a successful refresh, the interval plus a random jitter
+     * is used. After a failure, the failure backoff is used, doubling after each consecutive failure,
+     * but never exceeding the interval. Both the interval and the backoff are at least a minute.
+     *
+     * @return The delay in milliseconds.
+     */
+    private long getNextDelayMs() {
+        long intervalMs = TimeUnit.MINUTES.toMillis(Math.max(1, config.refresh.intervalMinutes));
+        if (failures > 0) {
+            long backoffMs = TimeUnit.MINUTES.toMillis(Math.max(1, config.refresh.failureBackoffMinutes))
+                    << Math.min(failures - 1, 16);
+            return Math.min(backoffMs, intervalMs);
+        }
+
+        long jitterMs = TimeUnit.MINUTES.toMillis(config.refresh.jitterMinutes);
+        return intervalMs + ((jitterMs > 0) ? ThreadLocalRandom.current().nextLong(jitterMs + 1) : 0);
+    }
+
+    /**
+     * Schedules a refresh after the given delay.
+     *
+     * @param delayMs The delay in milliseconds.
+     */
+    private void schedule(long delayMs) {
+        if (!executor.isShutdown()) {
+            LOGGER.info("Next refresh of the datasets in {} minutes.", TimeUnit.MILLISECONDS.toMinutes(delayMs));
+            executor.schedule(this::refresh, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.iish.coins.dataset;
+
+import com.google.inject.Singleton;
+import org.iish.coins.config.Config;
+import org.iish.coins.record.Column;
+import org.iish.coins.record.RecordStore;
+
+import javax.inject.Inject;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persists the last successfully loaded datasets on disk in a compact binary encoding,
+ * so that a restart can serve data right away, while the datasets are revalidated in the background.
+ */
+@Singleton
+public class DatasetsSnapshot {
+    private static final int MAGIC = 0x434F494E;
+    private static final int FORMAT_VERSION = 3;
+
+    private final Path path;
+
+    /**
+     * Uses the provided configuration to determine the location of the snapshot.
+     *
+     * @param config The configuration.
+     */
+    @Inject
+    public DatasetsSnapshot(Config config) {
+        this.path = ((config.snapshot != null) && (config.snapshot.path != null) && !config.snapshot.path.isEmpty())
+                ? Paths.get(config.snapshot.path) : null;
+    }
+
+    /**
+     * Determines whether snapshots are enabled.
+     *
+     * @return True if a snapshot location is configured.
+     */
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    /**
+     * Returns the location of the snapshot.
+     *
+     * @return The path of the snapshot.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Loads the datasets from the snapshot.
+     *
+     * @return The datasets, or null if snapshots are disabled or there is no snapshot yet.
+     * @throws IOException When I/O problems occur or the snapshot is invalid.
+     */
+    public DatasetVersion load() throws IOException {
+        if (!isEnabled() || !Files.isRegularFile(path))
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if ((in.readInt() != MAGIC) || (in.readInt() != FORMAT_VERSION))
+                throw new IOException("The snapshot " + path + " has an unknown format.");
+
+            Instant loadedAt = Instant.ofEpochMilli(in.readLong());
+            byte[] geoMints = readBytes(in);
+            byte[] geoAuthorities = readBytes(in);
+
+            Map<String, DataverseFile> files = new HashMap<>();
+            int nrOfFiles = in.readInt();
+            for (int i = 0; i < nrOfFiles; i++)
+                files.put(in.readUTF(), readFile(in));
+
+            RecordStore records = readRecords(in);
+
+            return new DatasetVersion(records, geoMints, geoAuthorities, files, loadedAt);
+        }
+    }
+
+    /**
+     * Saves the given datasets as the new snapshot. The snapshot is written to a temporary file first,
+     * which then replaces the previous snapshot, so a crash never leaves a partially written snapshot behind.
+     *
+     * @param version The datasets to save.
+     * @throws IOException When I/O problems occur.
+     */
+    public void save(DatasetVersion version) throws IOException {
+        if (!isEnabled())
+            return;
+
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmpPath = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpPath)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+
+                out.writeLong(version.getLoadedAt().toEpochMilli());
+                writeBytes(out, version.getGeoMints());
+                writeBytes(out, version.getGeoAuthorities());
+
+                out.writeInt(version.getFiles().size());
+                for (Map.Entry<String, DataverseFile> file : version.getFiles().entrySet()) {
+                    out.writeUTF(file.getKey());
+                    writeFile(out, file.getValue());
+                }
+
+                writeRecords(out, version.getRecords());
+            }
+
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    /**
+     * Writes the records column by column. String columns are written as their dictionary followed by the codes,
+     * date columns as epoch days and decimal columns as unscaled values.
+     *
+     * @param out     The output.
+     * @param records The records to write.
+     * @throws IOException When I/O problems occur.
+     */
+    private static void writeRecords(DataOutputStream out, RecordStore records) throws IOException {
+        out.writeInt(records.size());
+        for (Column column : Column.values()) {
+            switch (column.getType()) {
+                case STRING:
+                    String[] dictionary = records.getDictionary(column);
+                    out.writeInt(dictionary.length);
+                    for (String value : dictionary)
+                        out.writeUTF(value);
+                    for (int code : records.getCodes(column))
+                        out.writeInt(code);
+                    break;
+                case DATE:
+                    for (int epochDay : records.getEpochDays(column))
+                        out.writeInt(epochDay);
+                    break;
+                case DECIMAL:
+                    for (long unscaled : records.getUnscaledValues(column))
+                        out.writeLong(unscaled);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Reads the records written by {@link #writeRecords(DataOutputStream, RecordStore)}.
+     * Values occurring in multiple columns share a single instance.
+     *
+     * @param in The input.
+     * @return The records.
+     * @throws IOException When I/O problems occur.
+     */
+    private static RecordStore readRecords(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, String> canonicalStrings = new HashMap<>();
+        int nrOfColumns = Column.values().length;
+        int[][] codes = new int[nrOfColumns][];
+        String[][] dictionaries = new String[nrOfColumns][];
+        int[][] epochDays = new int[nrOfColumns][];
+        long[][] unscaled = new long[nrOfColumns][];
+
+        for (Column column : Column.values()) {
+            int i = column.ordinal();
+            switch (column.getType()) {
+                case STRING:
+                    dictionaries[i] = new String[in.readInt()];
+                    for (int code = 0; code < dictionaries[i].length; code++)
+                        dictionaries[i][code] = canonicalStrings.computeIfAbsent(in.readUTF(), value -> value);
+                    codes[i] = new int[size];
+                    for (int row = 0; row < size; row++)
+                        codes[i][row] = in.readInt();
+                    break;
+                case DATE:
+                    epochDays[i] = new int[size];
+                    for (int row = 0; row < size; row++)
+                        epochDays[i][row] = in.readInt();
+                    break;
+                case DECIMAL:
+                    unscaled[i] = new long[size];
+                    for (int row = 0; row < size; row++)
+                        unscaled[i][row] = in.readLong();
+                    break;
+            }
+        }
+
+        return new RecordStore(size, codes, dictionaries, epochDays, unscaled);
+    }
+
+    /**
+     * Writes the metadata of a Dataverse file.
+     *
+     * @param out  The output.
+     * @param file The Dataverse file.
+     * @throws IOException When I/O problems occur.
+     */
+    private static void writeFile(DataOutputStream out, DataverseFile file) throws IOException {
+        out.writeLong(file.getId());
+        out.writeUTF(file.getName());
+        out.writeLong(file.getDatasetVersionId());
+        writeNullableString(out, file.getVersion());
+        writeNullableString(out, file.getChecksum());
+        out.writeLong(file.getSize());
+    }
+
+    /**
+     * Reads the metadata of a Dataverse file written by {@link #writeFile(DataOutputStream, DataverseFile)}.
+     *
+     * @param in The input.
+     * @return The Dataverse file.
+     * @throws IOException When I/O problems occur.
+     */
+    private static DataverseFile readFile(DataInputStream in) throws IOException {
+        return new DataverseFile(in.readLong(), in.readUTF(), in.readLong(),
+                readNullableString(in), readNullableString(in), in.readLong());
+    }
+
+    /**
+     * Writes a String that may be null.
+     *
+     * @param out   The output.
+     * @param value The String to write.
+     * @throws IOException When I/O problems occur.
+     */
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null)
+            out.writeUTF(value);
+    }
+
+    /**
+     * Reads a String written by {@link #writeNullableString(DataOutputStream, String)}.
+     *
+     * @param in The input.
+     * @return The String read, or null.
+     * @throws IOException When I/O problems occur.
+     */
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Writes a byte array, prefixed with its length (or -1 if null).
+     *
+     * @param out   The output.
+     * @param bytes The bytes to write.
+     * @throws IOException When I/O problems occur.
+     */
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt((bytes != null) ? bytes.length : -1);
+        if (bytes != null)
+            out.write(bytes);
+    }
+
+    /**
+     * Reads a byte array written by {@link #writeBytes(DataOutputStream, byte[])}.
+     *
+     * @param in The input.
+     * @return The bytes read.
+     * @throws IOException When I/O problems occur.
+     */
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -10,8 +10,7 @@ import javax.inject.Inject;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -25,20 +24,19 @@ public class DataverseApiClient {
 
     private static final JsonParser JSON_PARSER = new JsonParser();
 
-    private String url;
-    private int connectTimeout;
-    private int readTimeout;
+    private final String url;
+    private final HttpTransport httpTransport;
 
     /**
-     * Uses the provided configuration to configure DataverseApiClient access.
+     * Uses the provided configuration and HTTP transport to configure DataverseApiClient access.
      *
-     * @param config The configuration.
+     * @param config        The configuration.
+     * @param httpTransport The HTTP transport.
      */
     @Inject
-    public DataverseApiClient(Config config) {
+    public DataverseApiClient(Config config, HttpTransport httpTransport) {
         this.url = config.dataverse.url;
-        this.connectTimeout = config.dataverse.connectTimeoutMs;
-        this.readTimeout = config.dataverse.readTimeoutMs;
+        this.httpTransport = httpTransport;
     }
 
     /**
@@ -50,35 +48,67 @@ public class DataverseApiClient {
      * @throws DataverseException Thrown when not successful to obtain data about the files in DataverseApiClient.
      */
     public DataverseFile getFileForPidAndLabel(String pid, String label) throws DataverseException {
-        try {
+        return getFileForLabel(getFilesForPid(pid), label);
+    }
+
+    /**
+     * Find the dataset file with the given label among the given files.
+     *
+     * @param files The files of a dataset.
+     * @param label Filter out files that do no have this label.
+     * @return The file found, or null if there is no file with the given label.
+     */
+    public static DataverseFile getFileForLabel(List<DataverseFile> files, String label) {
+        return files.stream()
+                .filter(file -> (label == null) || file.getName().equalsIgnoreCase(label))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Find all files of the latest version of the dataset using the DataverseApiClient for the given PID.
+     *
+     * @param pid The PID.
+     * @return The files found in DataverseApiClient.
+     * @throws DataverseException Thrown when not successful to obtain data about the files in DataverseApiClient.
+     */
+    public List<DataverseFile> getFilesForPid(String pid) throws DataverseException {
+        try (HttpTransport.Response response = httpTransport.get(this.url + API_DATASETS_PERSISTENT_ID + pid)) {
             List<DataverseFile> files = new ArrayList<>();
-            URL url = new URL(this.url + API_DATASETS_PERSISTENT_ID + pid);
-            HttpURLConnection connection = getConnection(url);
 
-            if (connection.getResponseCode() != 200) {
+            if (response.getStatusCode() != 200) {
                 throw new DataverseException("Could not obtain the files for PID " + pid
-                        + ": " + connection.getResponseMessage());
+                        + ": HTTP status " + response.getStatusCode());
             }
 
-            JsonElement response = JSON_PARSER.parse(new InputStreamReader(connection.getInputStream()));
-            response.getAsJsonObject()
+            JsonElement json = JSON_PARSER.parse(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8));
+            JsonObject latestVersion = json.getAsJsonObject()
                     .getAsJsonObject("data")
-                    .getAsJsonObject("latestVersion")
-                    .getAsJsonArray("files")
-                    .forEach(file -> {
-                        JsonObject dataFile = file.getAsJsonObject().getAsJsonObject("dataFile");
-                        if ((label == null) || dataFile.get("filename").getAsString().equalsIgnoreCase(label)) {
-                            files.add(new DataverseFile(
-                                    dataFile.get("id").getAsLong(), dataFile.get("filename").getAsString()
-                            ));
-                        }
-                    });
-
-            return (!files.isEmpty()) ? files.get(0) : null;
+                    .getAsJsonObject("latestVersion");
+
+            long datasetVersionId = latestVersion.get("id").getAsLong();
+            String version = (getString(latestVersion, "versionNumber") != null)
+                    ? getString(latestVersion, "versionNumber") + "." + getString(latestVersion, "versionMinorNumber")
+                    : null;
+
+            latestVersion.getAsJsonArray("files").forEach(file -> {
+                JsonObject dataFile = file.getAsJsonObject().getAsJsonObject("dataFile");
+                files.add(new DataverseFile(
+                        dataFile.get("id").getAsLong(), dataFile.get("filename").getAsString(),
+                        datasetVersionId, version, getChecksum(dataFile),
+                        (getString(dataFile, "filesize") != null) ? dataFile.get("filesize").getAsLong() : -1
+                ));
+            });
+
+            return files;
         }
         catch (IllegalStateException | IOException e) {
             throw new DataverseException("Could not obtain the files for PID " + pid, e);
         }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new DataverseException("Interrupted while obtaining the files for PID " + pid, ie);
+        }
     }
 
     /**
@@ -90,34 +120,53 @@ public class DataverseApiClient {
      */
     public InputStream getFileById(long id) throws DataverseException {
         try {
-            URL url = new URL(this.url + API_ACCESS_DATAFILE + id);
-            HttpURLConnection connection = getConnection(url);
+            HttpTransport.Response response = httpTransport.get(this.url + API_ACCESS_DATAFILE + id);
 
-            if (connection.getResponseCode() != 200) {
+            if (response.getStatusCode() != 200) {
+                response.close();
                 throw new DataverseException("Could not obtain the file for id " + id
-                        + ": " + connection.getResponseMessage());
+                        + ": HTTP status " + response.getStatusCode());
             }
 
-            return connection.getInputStream();
+            return response.getBody();
         }
         catch (IOException e) {
             throw new DataverseException("Could not obtain the file with id " + id, e);
         }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new DataverseException("Interrupted while obtaining the file with id " + id, ie);
+        }
     }
 
     /**
-     * Sets up a connection for the given URL.
+     * Returns the checksum of the given data file, prefixed with the checksum type.
      *
-     * @param url The URL to establish a connection to.
-     * @return The established connection.
-     * @throws IOException Thrown when an I/O exception occurs.
+     * @param dataFile The data file from the Dataverse API.
+     * @return The checksum, or null if the data file has no checksum.
      */
-    private HttpURLConnection getConnection(URL url) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("GET");
-        connection.setConnectTimeout(connectTimeout);
-        connection.setReadTimeout(readTimeout);
+    private static String getChecksum(JsonObject dataFile) {
+        JsonElement checksum = dataFile.get("checksum");
+        if ((checksum != null) && checksum.isJsonObject()) {
+            String type = getString(checksum.getAsJsonObject(), "type");
+            String value = getString(checksum.getAsJsonObject(), "value");
+            if (value != null)
+                return type + ":" + value;
+        }
+
+        String md5 = getString(dataFile, "md5");
+        return (md5 != null) ? "MD5:" + md5 : null;
+    }
 
-        return connection;
+    /**
+     * Returns the string value of the given member of the JSON object.
+     *
+     * @param object The JSON object.
+     * @param member The name of the member.
+     * @return The string value, or null if the member is missing.
+     */
+    private static String getString(JsonObject object, String member) {
+        JsonElement element = object.get(member);
+        return ((element != null) && element.isJsonPrimitive()) ? element.getAsString() : null;
     }
 }
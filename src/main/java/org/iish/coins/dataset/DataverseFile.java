@@ -1,21 +1,36 @@
 package org.iish.coins.dataset;
 
+import java.util.Objects;
+
 /**
  * Represents a file in Dataverse.
  */
 public class DataverseFile {
     private final long id;
     private final String name;
+    private final long datasetVersionId;
+    private final String version;
+    private final String checksum;
+    private final long size;
 
     /**
      * Creates a representation of a file in Dataverse.
      *
-     * @param id   The id of the file.
-     * @param name The name of the file.
+     * @param id               The id of the file.
+     * @param name             The name of the file.
+     * @param datasetVersionId The id of the dataset version the file belongs to.
+     * @param version          The version number of the dataset version, or null if not released.
+     * @param checksum         The checksum of the file, prefixed with the checksum type, or null if unknown.
+     * @param size             The size of the file in bytes, or -1 if unknown.
      */
-    public DataverseFile(final long id, final String name) {
+    public DataverseFile(final long id, final String name, final long datasetVersionId, final String version,
+                         final String checksum, final long size) {
         this.id = id;
         this.name = name;
+        this.datasetVersionId = datasetVersionId;
+        this.version = version;
+        this.checksum = checksum;
+        this.size = size;
     }
 
     /**
@@ -35,4 +50,56 @@ public class DataverseFile {
     public String getName() {
         return name;
     }
+
+    /**
+     * Returns the id of the dataset version the file belongs to.
+     *
+     * @return The id of the dataset version.
+     */
+    public long getDatasetVersionId() {
+        return datasetVersionId;
+    }
+
+    /**
+     * Returns the version number of the dataset version the file belongs to.
+     *
+     * @return The version number, or null if not released.
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the checksum of the file, prefixed with the checksum type (e.g. MD5:...).
+     *
+     * @return The checksum, or null if unknown.
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Returns the size of the file in bytes.
+     *
+     * @return The size of the file, or -1 if unknown.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Determines whether the given file has the same content as this file. Files in Dataverse are never modified,
+     * a replaced file obtains a new id, so the same id and checksum mean the content is unchanged.
+     *
+     * @param other The other file.
+     * @return True if the content of both files is the same.
+     */
+    public boolean hasSameContent(DataverseFile other) {
+        return (other != null) && (id == other.id) && Objects.equals(checksum, other.checksum);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (id " + id + ", version " + version + ", " + checksum + ")";
+    }
 }
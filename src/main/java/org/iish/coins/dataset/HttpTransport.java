@@ -0,0 +1,240 @@
+package org.iish.coins.dataset;
+
+import com.google.inject.Singleton;
+import org.iish.coins.config.AcceptAllTrustManager;
+import org.iish.coins.config.Config;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP transport for the communication with Dataverse. Connections are pooled and kept alive (using HTTP/2 where
+ * supported), responses are requested gzip compressed and decompressed while streaming, and requests are retried
+ * with an exponential backoff on server errors and timeouts.
+ */
+@Singleton
+public class HttpTransport {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpTransport.class);
+
+    private final HttpClient httpClient;
+    private final Duration readTimeout;
+    private final int maxRetries;
+    private final int retryBackoffMs;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong totalMs = new AtomicLong();
+
+    /**
+     * Uses the provided configuration to set up the HTTP transport.
+     *
+     * @param config The configuration.
+     */
+    @Inject
+    public HttpTransport(Config config) {
+        // As with the URLConnection used before, a timeout of 0 waits indefinitely
+        this.readTimeout = (config.dataverse.readTimeoutMs > 0)
+                ? Duration.ofMillis(config.dataverse.readTimeoutMs) : null;
+        this.maxRetries = Math.max(0, config.dataverse.maxRetries);
+        this.retryBackoffMs = Math.max(0, config.dataverse.retryBackoffMs);
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .sslContext(AcceptAllTrustManager.getSslContext());
+        if (config.dataverse.connectTimeoutMs > 0)
+            builder.connectTimeout(Duration.ofMillis(config.dataverse.connectTimeoutMs));
+        this.httpClient = builder.build();
+    }
+
+    /**
+     * Performs a GET request for the given URL. Server errors and timeouts are retried.
+     * The body of the returned response has to be closed by the caller.
+     *
+     * @param url The URL.
+     * @return The response.
+     * @throws IOException          When I/O problems occur or the maximum number of retries is exceeded.
+     * @throws InterruptedException When interrupted while waiting for the response.
+     */
+    public Response get(String url) throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                .GET()
+                .header("Accept-Encoding", "gzip");
+        if (readTimeout != null)
+            builder.timeout(readTimeout);
+        HttpRequest request = builder.build();
+
+        long start = System.currentTimeMillis();
+        requests.incrementAndGet();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+                if ((response.statusCode() < 500) || (attempt > maxRetries))
+                    return new Response(url, response, start, attempt);
+
+                LOGGER.warn("GET {} failed with status {} (attempt {}).", url, response.statusCode(), attempt);
+                response.body().close();
+            }
+            catch (HttpTimeoutException hte) {
+                if (attempt > maxRetries) {
+                    failures.incrementAndGet();
+                    throw hte;
+                }
+                LOGGER.warn("GET {} timed out (attempt {}).", url, attempt);
+            }
+            catch (IOException ioe) {
+                failures.incrementAndGet();
+                throw ioe;
+            }
+
+            retries.incrementAndGet();
+            Thread.sleep((long) retryBackoffMs << Math.min(attempt - 1, 16));
+        }
+    }
+
+    /**
+     * Returns the metrics of all requests performed so far.
+     *
+     * @return The number of requests, retries, failures and bytes received and the total time spent in milliseconds.
+     */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> metrics = new LinkedHashMap<>();
+        metrics.put("requests", requests.get());
+        metrics.put("retries", retries.get());
+        metrics.put("failures", failures.get());
+        metrics.put("bytes", bytes.get());
+        metrics.put("totalMs", totalMs.get());
+        return metrics;
+    }
+
+    /**
+     * The response of a request, with a body that is decompressed while reading.
+     * Once the body is closed, the timing of the request is recorded.
+     */
+    public class Response implements AutoCloseable {
+        private final int statusCode;
+        private final InputStream body;
+
+        /**
+         * Wraps the given response.
+         *
+         * @param url      The requested URL.
+         * @param response The response.
+         * @param start    When the request was started, in milliseconds.
+         * @param attempts The number of attempts needed.
+         * @throws IOException When I/O problems occur.
+         */
+        private Response(String url, HttpResponse<InputStream> response, long start, int attempts)
+                throws IOException {
+            this.statusCode = response.statusCode();
+            if (statusCode >= 400)
+                failures.incrementAndGet();
+
+            long firstByteMs = System.currentTimeMillis() - start;
+            InputStream body = new TimedInputStream(response.body(), url, start, firstByteMs, attempts);
+            boolean gzip = response.headers().firstValue("Content-Encoding")
+                    .map(encoding -> encoding.equalsIgnoreCase("gzip"))
+                    .orElse(false);
+
+            try {
+                this.body = gzip ? new GZIPInputStream(body, 64 * 1024) : body;
+            }
+            catch (IOException ioe) {
+                body.close();
+                throw ioe;
+            }
+        }
+
+        /**
+         * Returns the status code of the response.
+         *
+         * @return The status code.
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * Returns the (decompressed) body of the response.
+         *
+         * @return The body.
+         */
+        public InputStream getBody() {
+            return body;
+        }
+
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+
+    /**
+     * Counts the bytes received and records the timing of the request once closed.
+     */
+    private class TimedInputStream extends FilterInputStream {
+        private final String url;
+        private final long start;
+        private final long firstByteMs;
+        private final int attempts;
+
+        private long count = 0;
+        private boolean closed = false;
+
+        private TimedInputStream(InputStream in, String url, long start, long firstByteMs, int attempts) {
+            super(in);
+            this.url = url;
+            this.start = start;
+            this.firstByteMs = firstByteMs;
+            this.attempts = attempts;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0)
+                count += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+
+                long ms = System.currentTimeMillis() - start;
+                bytes.addAndGet(count);
+                totalMs.addAndGet(ms);
+
+                LOGGER.info("GET {} took {} ms ({} ms to first byte, {} bytes received, {} attempt(s)).",
+                        url, ms, firstByteMs, count, attempts);
+            }
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.iish.coins.http;
+
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Immutable content which is compressed once up front and served with content negotiation:
+ * the gzip compressed representation is served to clients accepting gzip, the original content to others.
+ * Both representations have their own strong ETag, so that conditional requests are answered with a 304.
+ */
+public class CompressedContent {
+    private static final int MIN_COMPRESSIBLE_BYTES = 256;
+
+    private final String contentType;
+    private final String cacheControl;
+    private final byte[] content;
+    private final byte[] gzipped;
+    private final String etag;
+    private final String gzipEtag;
+
+    /**
+     * Creates compressed content.
+     *
+     * @param contentType  The content type.
+     * @param cacheControl The Cache-Control header to send, or null.
+     * @param content      The content.
+     * @param gzipped      The gzip compressed content, or null if compression does not pay off.
+     * @param etag         The ETag of the content, without quotes.
+     */
+    private CompressedContent(String contentType, String cacheControl, byte[] content, byte[] gzipped, String etag) {
+        this.contentType = contentType;
+        this.cacheControl = cacheControl;
+        this.content = content;
+        this.gzipped = gzipped;
+        this.etag = '"' + etag + '"';
+        this.gzipEtag = '"' + etag + "-gzip" + '"';
+    }
+
+    /**
+     * Compresses the given content, if it is compressible and compression makes it smaller.
+     *
+     * @param content      The content.
+     * @param contentType  The content type.
+     * @param compressible Whether the content type is compressible.
+     * @param cacheControl The Cache-Control header to send, or null.
+     * @return The compressed content.
+     */
+    public static CompressedContent of(byte[] content, String contentType, boolean compressible, String cacheControl) {
+        byte[] gzipped = null;
+        if (compressible && (content.length >= MIN_COMPRESSIBLE_BYTES)) {
+            gzipped = gzip(content);
+            if (gzipped.length >= content.length)
+                gzipped = null;
+        }
+        return new CompressedContent(contentType, cacheControl, content, gzipped, getHash(content));
+    }
+
+    /**
+     * Returns the content, uncompressed.
+     *
+     * @return The content.
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * Serves the content: writes the representation accepted by the client straight to the response,
+     * or responds with a 304 if the client already has it.
+     *
+     * @param request  The request.
+     * @param response The response.
+     * @throws IOException On I/O related problems.
+     */
+    public void serve(Request request, Response response) throws IOException {
+        boolean useGzip = (gzipped != null) && acceptsGzip(request.headers("Accept-Encoding"));
+        String selectedEtag = useGzip ? gzipEtag : etag;
+
+        response.header("Vary", "Accept-Encoding");
+        response.header("ETag", selectedEtag);
+        if (cacheControl != null)
+            response.header("Cache-Control", cacheControl);
+
+        HttpServletResponse raw = response.raw();
+        if (matches(request.headers("If-None-Match"), selectedEtag)) {
+            raw.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            raw.flushBuffer();
+            return;
+        }
+
+        byte[] body = useGzip ? gzipped : content;
+        response.type(contentType);
+        if (useGzip)
+            response.header("Content-Encoding", "gzip");
+        raw.setContentLength(body.length);
+
+        try (OutputStream out = raw.getOutputStream()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Determines whether the client accepts gzip compressed responses, taking quality values into account.
+     *
+     * @param acceptEncoding The Accept-Encoding header of the request, or null.
+     * @return Whether gzip is acceptable.
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null)
+            return false;
+
+        Boolean wildcard = null;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.trim().split(";");
+            String coding = parts[0].trim().toLowerCase();
+            boolean acceptable = getQuality(parts) > 0;
+
+            if (coding.equals("gzip") || coding.equals("x-gzip"))
+                return acceptable;
+            if (coding.equals("*"))
+                wildcard = acceptable;
+        }
+        return (wildcard != null) && wildcard;
+    }
+
+    /**
+     * Determines the quality value of an element of the Accept-Encoding header.
+     *
+     * @param parts The coding followed by its parameters.
+     * @return The quality value, 1 if not given, or 0 if malformed.
+     */
+    private static double getQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String param = parts[i].trim();
+            if (param.startsWith("q=") || param.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                }
+                catch (NumberFormatException nfe) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Determines whether the If-None-Match header of the request matches the given ETag (using weak comparison).
+     *
+     * @param ifNoneMatch The If-None-Match header of the request, or null.
+     * @param etag        The ETag of the representation.
+     * @return Whether the client already has the representation.
+     */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null)
+            return false;
+
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.startsWith("W/"))
+                trimmed = trimmed.substring(2);
+            if (trimmed.equals("*") || trimmed.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Compresses the given content with gzip, using the best compression.
+     *
+     * @param content The content.
+     * @return The compressed content.
+     */
+    private static byte[] gzip(byte[] content) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 4);
+            try (GZIPOutputStream out = new GZIPOutputStream(bytes) {{
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }}) {
+                out.write(content);
+            }
+            return bytes.toByteArray();
+        }
+        catch (IOException ioe) {
+            // Cannot happen when writing to memory
+            throw new IllegalStateException(ioe);
+        }
+    }
+
+    /**
+     * Determines the hash of the given content, to be used as a strong ETag.
+     *
+     * @param content The content.
+     * @return The hash in hexadecimal notation.
+     */
+    private static String getHash(byte[] content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < 16; i++)
+                sb.append(String.format("%02x", hash[i]));
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException nsae) {
+            // Every Java platform supports SHA-256
+            throw new IllegalStateException(nsae);
+        }
+    }
+}
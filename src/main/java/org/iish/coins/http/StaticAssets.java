@@ -0,0 +1,93 @@
+package org.iish.coins.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The static assets bundled on the classpath, each read and compressed once on first request.
+ */
+public class StaticAssets {
+    private static final String DEFAULT_TYPE = "application/octet-stream";
+    private static final Map<String, String> COMPRESSIBLE_TYPES = new HashMap<>();
+    private static final Map<String, String> OTHER_TYPES = new HashMap<>();
+
+    static {
+        COMPRESSIBLE_TYPES.put("html", "text/html; charset=utf-8");
+        COMPRESSIBLE_TYPES.put("js", "application/javascript; charset=utf-8");
+        COMPRESSIBLE_TYPES.put("css", "text/css; charset=utf-8");
+        COMPRESSIBLE_TYPES.put("json", "application/json; charset=utf-8");
+        COMPRESSIBLE_TYPES.put("svg", "image/svg+xml");
+        COMPRESSIBLE_TYPES.put("ico", "image/x-icon");
+        COMPRESSIBLE_TYPES.put("eot", "application/vnd.ms-fontobject");
+        COMPRESSIBLE_TYPES.put("ttf", "font/ttf");
+
+        OTHER_TYPES.put("gif", "image/gif");
+        OTHER_TYPES.put("png", "image/png");
+        OTHER_TYPES.put("jpg", "image/jpeg");
+        OTHER_TYPES.put("woff", "font/woff");
+        OTHER_TYPES.put("woff2", "font/woff2");
+    }
+
+    private final String location;
+    private final String cacheControl;
+    private final Map<String, CompressedContent> assets = new ConcurrentHashMap<>();
+
+    /**
+     * Serves the static assets in the given location on the classpath.
+     *
+     * @param location         The location on the classpath, like '/public'.
+     * @param expireTimeSeconds How long clients may cache the assets.
+     */
+    public StaticAssets(String location, long expireTimeSeconds) {
+        this.location = location;
+        this.cacheControl = "private, max-age=" + expireTimeSeconds;
+    }
+
+    /**
+     * Returns the asset on the given path; the path of a directory refers to its index.html.
+     *
+     * @param path The path of the request.
+     * @return The asset, or null if there is none.
+     * @throws IOException When I/O problems occur while reading the asset.
+     */
+    public CompressedContent get(String path) throws IOException {
+        if ((path == null) || !path.startsWith("/") || path.contains(".."))
+            return null;
+        if (path.endsWith("/"))
+            path = path + "index.html";
+        if (path.lastIndexOf('.') < path.lastIndexOf('/'))
+            return null;
+
+        CompressedContent asset = assets.get(path);
+        if (asset == null) {
+            asset = read(path);
+            if (asset != null)
+                assets.putIfAbsent(path, asset);
+        }
+        return asset;
+    }
+
+    /**
+     * Reads and compresses the asset on the given path.
+     *
+     * @param path The path.
+     * @return The asset, or null if there is none.
+     * @throws IOException When I/O problems occur while reading the asset.
+     */
+    private CompressedContent read(String path) throws IOException {
+        try (InputStream in = StaticAssets.class.getResourceAsStream(location + path)) {
+            if (in == null)
+                return null;
+
+            String extension = path.substring(path.lastIndexOf('.') + 1).toLowerCase();
+            boolean compressible = COMPRESSIBLE_TYPES.containsKey(extension);
+            String contentType = compressible
+                    ? COMPRESSIBLE_TYPES.get(extension) : OTHER_TYPES.getOrDefault(extension, DEFAULT_TYPE);
+
+            return CompressedContent.of(in.readAllBytes(), contentType, compressible, cacheControl);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.iish.coins.record;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The columns of the records, in the order of the CSV.
+ */
+public enum Column {
+    ID("UID", Type.STRING, 0),
+    TYPE_ID("TYPEID", Type.STRING, 0),
+    SOURCE("SOURCE", Type.STRING, 0),
+    MINT("MINT", Type.STRING, 0),
+    AUTHORITY("AUTHORITY", Type.STRING, 0),
+    DATE_FROM("DATEfrom", Type.DATE, 0),
+    DATE_TO("DATEto", Type.DATE, 0),
+    COIN_NAME("CoinNAME", Type.STRING, 0),
+    ALLOY("ALLOY", Type.STRING, 0),
+    VALUE("VALUEd", Type.DECIMAL, 3),
+    QUANTITY("QTTYcoins", Type.DECIMAL, 0),
+    PURITY("FINEness", Type.DECIMAL, 3),
+    RAW_WEIGHT("WEIGHTraw", Type.DECIMAL, 3),
+    FINE_WEIGHT("WEIGHTfine", Type.DECIMAL, 3),
+    TAILLE("TAILLE", Type.DECIMAL, 3),
+    HIGHER_AUTHORITY("AUTHORITY_SUPRA", Type.STRING, 0),
+    ALTERNATIVE_COIN_NAME("ALT_CoinNAME", Type.STRING, 0),
+    ALTERNATIVE_TYPE_ID("ALT_TYPEID", Type.STRING, 0),
+    VALUE_IN_HOURLY_WAGES("VALUE_HourlyWAGE", Type.DECIMAL, 3);
+
+    private static final Map<String, Column> BY_NAME = new HashMap<>();
+
+    static {
+        for (Column column : values())
+            BY_NAME.put(column.name, column);
+    }
+
+    private final String name;
+    private final Type type;
+    private final int scale;
+
+    /**
+     * Defines a column.
+     *
+     * @param name  The name of the column in the CSV and JSON.
+     * @param type  The type of the values.
+     * @param scale The fixed scale of decimal values.
+     */
+    Column(String name, Type type, int scale) {
+        this.name = name;
+        this.type = type;
+        this.scale = scale;
+    }
+
+    /**
+     * Returns the column with the given name.
+     *
+     * @param name The name of the column in the CSV and JSON.
+     * @return The column, or null if there is no column with the given name.
+     */
+    public static Column forName(String name) {
+        return BY_NAME.get(name);
+    }
+
+    /**
+     * Returns the name of the column in the CSV and JSON.
+     *
+     * @return The name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the type of the values.
+     *
+     * @return The type.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Returns the fixed scale of decimal values.
+     *
+     * @return The scale.
+     */
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * The types of values.
+     */
+    public enum Type {
+        STRING, DATE, DECIMAL
+    }
+}
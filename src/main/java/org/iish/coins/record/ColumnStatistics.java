@@ -0,0 +1,163 @@
+package org.iish.coins.record;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of a column of the record store. The memory saved is an estimate of the difference between holding
+ * an object for every value (as a String, LocalDate or BigDecimal on a 64-bit JVM with compressed references)
+ * and holding the column in the record store.
+ */
+public class ColumnStatistics {
+    private static final int REFERENCE_BYTES = 4;
+    private static final int STRING_BYTES = 24;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int LOCAL_DATE_BYTES = 24;
+    private static final int BIG_DECIMAL_BYTES = 40;
+
+    private final Column column;
+    private final int count;
+    private final int cardinality;
+    private final long bytesSaved;
+
+    /**
+     * Creates the statistics of a column.
+     *
+     * @param column      The column.
+     * @param count       The number of values.
+     * @param cardinality The number of distinct values.
+     * @param bytesSaved  The estimated number of bytes saved.
+     */
+    private ColumnStatistics(Column column, int count, int cardinality, long bytesSaved) {
+        this.column = column;
+        this.count = count;
+        this.cardinality = cardinality;
+        this.bytesSaved = bytesSaved;
+    }
+
+    /**
+     * Computes the statistics of a dictionary coded string column.
+     *
+     * @param column     The string column.
+     * @param codes      The codes, indexed by row.
+     * @param dictionary The distinct values, indexed by their code.
+     * @return The statistics.
+     */
+    static ColumnStatistics forStrings(Column column, int[] codes, String[] dictionary) {
+        long[] sizes = new long[dictionary.length];
+        for (int code = 0; code < dictionary.length; code++)
+            sizes[code] = getSize(dictionary[code]);
+
+        int count = 0;
+        long objectBytes = 0;
+        for (int code : codes) {
+            if (code != RecordStore.NULL_CODE) {
+                count++;
+                objectBytes += sizes[code];
+            }
+        }
+
+        long dictionaryBytes = Arrays.stream(sizes).sum() + ((long) REFERENCE_BYTES * dictionary.length);
+        return new ColumnStatistics(column, count, dictionary.length, objectBytes - dictionaryBytes);
+    }
+
+    /**
+     * Computes the statistics of a date column.
+     *
+     * @param column    The date column.
+     * @param epochDays The epoch days, indexed by row.
+     * @return The statistics.
+     */
+    static ColumnStatistics forDates(Column column, int[] epochDays) {
+        int[] sorted = epochDays.clone();
+        Arrays.sort(sorted);
+
+        int count = 0, cardinality = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] != RecordStore.NULL_DATE) {
+                count++;
+                if ((i == 0) || (sorted[i] != sorted[i - 1]))
+                    cardinality++;
+            }
+        }
+
+        return new ColumnStatistics(column, count, cardinality, (long) LOCAL_DATE_BYTES * count);
+    }
+
+    /**
+     * Computes the statistics of a decimal column.
+     *
+     * @param column   The decimal column.
+     * @param unscaled The unscaled values, indexed by row.
+     * @return The statistics.
+     */
+    static ColumnStatistics forDecimals(Column column, long[] unscaled) {
+        long[] sorted = unscaled.clone();
+        Arrays.sort(sorted);
+
+        int count = 0, cardinality = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (sorted[i] != RecordStore.NULL_DECIMAL) {
+                count++;
+                if ((i == 0) || (sorted[i] != sorted[i - 1]))
+                    cardinality++;
+            }
+        }
+
+        long objectBytes = ((long) REFERENCE_BYTES * unscaled.length) + ((long) BIG_DECIMAL_BYTES * count);
+        return new ColumnStatistics(column, count, cardinality, objectBytes - (8L * unscaled.length));
+    }
+
+    /**
+     * Estimates the size of a String in memory.
+     *
+     * @param value The String.
+     * @return The estimated number of bytes.
+     */
+    private static long getSize(String value) {
+        boolean latin1 = value.chars().allMatch(c -> c < 256);
+        long arrayBytes = ARRAY_HEADER_BYTES + (latin1 ? value.length() : 2L * value.length());
+        return STRING_BYTES + ((arrayBytes + 7) / 8 * 8);
+    }
+
+    /**
+     * Returns the column.
+     *
+     * @return The column.
+     */
+    public Column getColumn() {
+        return column;
+    }
+
+    /**
+     * Returns the number of values.
+     *
+     * @return The number of values.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of distinct values.
+     *
+     * @return The cardinality.
+     */
+    public int getCardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Returns the estimated number of bytes saved.
+     *
+     * @return The number of bytes saved.
+     */
+    public long getBytesSaved() {
+        return bytesSaved;
+    }
+
+    @Override
+    public String toString() {
+        return column.getName() + ": " + count + " values, " + cardinality + " distinct, "
+                + (bytesSaved / 1024) + " KB saved";
+    }
+}
@@ -3,19 +3,20 @@ package org.iish.coins.record;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
 
 import java.io.*;
 import java.math.BigDecimal;
-import java.nio.charset.Charset;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -24,9 +25,8 @@ import java.util.stream.Stream;
 public class Csv {
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("d-M-u");
 
-    private static final Object[] HEADERS = {"UID", "TYPEID", "SOURCE", "MINT", "AUTHORITY", "DATEfrom", "DATEto",
-            "CoinNAME", "ALLOY", "VALUEd", "QTTYcoins", "FINEness", "WEIGHTraw", "WEIGHTfine", "TAILLE",
-            "AUTHORITY_SUPRA", "ALT_CoinNAME", "ALT_TYPEID", "VALUE_HourlyWAGE"};
+    private static final Column[] COLUMNS = Column.values();
+    private static final Object[] HEADERS = Stream.of(COLUMNS).map(Column::getName).toArray();
 
     private static final CSVFormat CSV_FORMAT = CSVFormat.EXCEL
             .withFirstRecordAsHeader()
@@ -34,147 +34,233 @@ public class Csv {
             .withIgnoreEmptyLines()
             .withNullString("");
 
+    private final int parallelism;
+
+    /**
+     * Sets up reading and writing of CSV, post-processing parsed records using all available processors.
+     */
+    public Csv() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Sets up reading and writing of CSV.
+     *
+     * @param parallelism The maximum number of threads to use to post-process the parsed records.
+     */
+    public Csv(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
     /**
      * Parses the given coins CSV with extra data from the wages CSV.
+     * The coins CSV is streamed: rows are turned into records while the bytes are still arriving.
      *
      * @param coinsStream The stream of the given coins CSV.
      * @param wagesStream The stream of the given wages CSV.
-     * @return A list with records from the coins CSV (including some extra wages from the wages CSV).
+     * @return A store with records from the coins CSV (including some extra wages from the wages CSV).
      * @throws IOException When I/O problems occur.
      */
-    public List<Record> parse(InputStream coinsStream, InputStream wagesStream) throws IOException {
-        Map<String, Record> recordsById = new ConcurrentHashMap<>();
-        Map<String, String[]> recordLinks = new ConcurrentHashMap<>();
-        Map<Integer, BigDecimal> wages = getWages(wagesStream);
-
-        CSVParser parser = new CSVParser(new InputStreamReader(coinsStream, Charset.forName("UTF-8")), CSV_FORMAT);
-        List<Record> records = parser.getRecords().parallelStream().map(csvRecord -> {
-            Record record = new Record();
-
-            record.setId(csvRecord.get("UID"));
-            record.setTypeId(csvRecord.get("TYPEID"));
-            record.setSource(csvRecord.get("SOURCE"));
-            record.setMint(csvRecord.get("MINT"));
-            record.setAuthority(csvRecord.get("AUTHORITY"));
-
-            record.setDateFrom(getLocalDate(csvRecord.get("DATEfrom")));
-            record.setDateTo(getLocalDate(csvRecord.get("DATEto")));
-
-            record.setCoinName(csvRecord.get("CoinNAME"));
-            record.setAlloy(csvRecord.get("ALLOY"));
-
-            record.setValue(getBigDecimal(csvRecord.get("VALUEd"), 3));
-            record.setQuantity(getBigDecimal(csvRecord.get("QTTYcoins"), 0));
-            record.setPurity(getBigDecimal(csvRecord.get("FINEness"), 3));
-            record.setRawWeight(getBigDecimal(csvRecord.get("WEIGHTraw"), 3));
-            record.setFineWeight(getBigDecimal(csvRecord.get("WEIGHTfine"), 3));
-            record.setTaille(getBigDecimal(csvRecord.get("TAILLE"), 3));
-
-            record.setHigherAuthority(csvRecord.get("AUTHORITY_SUPRA"));
-            record.setAlternativeCoinName(csvRecord.get("ALT_CoinNAME"));
-            record.setAlternativeTypeId(csvRecord.get("ALT_TYPEID"));
-
-            // Also map each record by its id and record the links
-            recordsById.put(record.getId(), record);
-            if (csvRecord.get("LINK") != null)
-                recordLinks.put(record.getId(), csvRecord.get("LINK").split(","));
-
-            return record;
-        }).collect(Collectors.toList());
-
-        records.parallelStream().forEach(record -> {
-            // Determine if we should base the quantity coins on the link
-            if ((record.getQuantity() != null) && (record.getQuantity().compareTo(BigDecimal.ZERO) == 0)
-                    && (recordLinks.containsKey(record.getId()))) {
-                Stream.of(recordLinks.get(record.getId()))
-                        .map(id -> recordsById.getOrDefault(id, null))
-                        .filter(Objects::nonNull)
-                        .forEach(linkRecord -> {
-                            BigDecimal totalQuantity = linkRecord.getQuantity();
-                            long totalDays = record.getTotalDays() + linkRecord.getTotalDays();
-
-                            linkRecord.setQuantity(
-                                    totalQuantity
-                                            .multiply(new BigDecimal(linkRecord.getTotalDays()))
-                                            .divide(new BigDecimal(totalDays), BigDecimal.ROUND_HALF_UP)
-                            );
-
-                            record.setQuantity(
-                                    totalQuantity
-                                            .multiply(new BigDecimal(record.getTotalDays()))
-                                            .divide(new BigDecimal(totalDays), BigDecimal.ROUND_HALF_UP)
-                            );
-                        });
-            }
+    public RecordStore parse(InputStream coinsStream, InputStream wagesStream) throws IOException {
+        RecordStore.Builder builder = parseRecords(coinsStream);
+        Map<Integer, BigDecimal> wages = parseWages(wagesStream);
+        return postProcess(builder, wages);
+    }
 
-            // Calculate the coin values in hourly wages
-            if (record.getValue() != null) {
-                long totalDays = 0;
-                BigDecimal totalValue = BigDecimal.ZERO;
-                for (Map.Entry<Integer, Long> yearEntry : record.getTotalDaysPerYear().entrySet()) {
-                    if (wages.containsKey(yearEntry.getKey())) {
-                        BigDecimal hourlyWage = wages.get(yearEntry.getKey());
-                        BigDecimal daysInYear = new BigDecimal(yearEntry.getValue());
-
-                        totalDays += yearEntry.getValue();
-                        totalValue = totalValue.add(hourlyWage.multiply(daysInYear));
+    /**
+     * Parses the given coins CSV, row by row, without holding more than a single row of the CSV in memory.
+     * Repeated dates and numbers are parsed only once and repeated strings share a single instance.
+     * The records still have to be post-processed using {@link #postProcess(RecordStore.Builder, Map)}.
+     *
+     * @param coinsStream The stream of the given coins CSV.
+     * @return A builder with records from the coins CSV.
+     * @throws IOException When I/O problems occur.
+     */
+    public RecordStore.Builder parseRecords(InputStream coinsStream) throws IOException {
+        RecordStore.Builder builder = new RecordStore.Builder();
+        Map<String, LocalDate> dates = new HashMap<>();
+        Map<Column, Map<String, BigDecimal>> decimals = new EnumMap<>(Column.class);
+
+        try (CSVParser parser = new CSVParser(new InputStreamReader(coinsStream, StandardCharsets.UTF_8), CSV_FORMAT)) {
+            for (CSVRecord csvRecord : parser) {
+                int row = builder.addRow();
+
+                for (Column column : COLUMNS) {
+                    // The coin values in hourly wages are computed during post-processing
+                    if (column == Column.VALUE_IN_HOURLY_WAGES)
+                        continue;
+
+                    String value = csvRecord.get(column.getName());
+                    switch (column.getType()) {
+                        case STRING:
+                            builder.setString(column, row, value);
+                            break;
+                        case DATE:
+                            builder.setDate(column, row, getLocalDate(value, dates));
+                            break;
+                        case DECIMAL:
+                            builder.setDecimal(column, row, getBigDecimal(value, column.getScale(),
+                                    decimals.computeIfAbsent(column, c -> new HashMap<>())));
+                            break;
                     }
                 }
 
-                if (totalDays > 0) {
-                    BigDecimal averageWage = totalValue.divide(new BigDecimal(totalDays), BigDecimal.ROUND_HALF_UP);
-                    record.setValueInHourlyWages(record.getValue().divide(averageWage, BigDecimal.ROUND_HALF_UP));
-                }
+                // Record the links, to be resolved during post-processing
+                if (csvRecord.get("LINK") != null)
+                    builder.setLinks(row, csvRecord.get("LINK").split(","));
             }
-        });
+        }
 
-        return records;
+        return builder;
     }
 
     /**
-     * Writes the given list of records to CSV.
+     * Post-processes the parsed records: the quantity coins of linked records is divided
+     * and the coin values in hourly wages are computed. This runs on a bounded number of threads.
      *
-     * @param records The list of records to write.
-     * @return A writer with the CSV.
-     * @throws IOException When I/O problems occur.
+     * @param builder The builder with the parsed records.
+     * @param wages   The mapping between the year and the hourly wage.
+     * @return The store with the post-processed records.
+     * @throws IOException When post-processing is interrupted or fails.
      */
-    public Writer write(List<Record> records) throws IOException {
-        CSVPrinter csvPrinter;
-        StringWriter writer = new StringWriter();
+    public RecordStore postProcess(RecordStore.Builder builder, Map<Integer, BigDecimal> wages) throws IOException {
+        RecordStore store = builder.build();
+        Map<Integer, String[]> links = builder.getLinks();
+
+        // Only map the records that are actually linked to by their id
+        Set<String> linkedIds = links.values().stream()
+                .flatMap(Stream::of)
+                .collect(Collectors.toSet());
+        Map<String, Integer> linkedRowsById = new HashMap<>();
+        for (int row = 0; row < store.size(); row++) {
+            String id = store.getString(Column.ID, row);
+            if (linkedIds.contains(id))
+                linkedRowsById.put(id, row);
+        }
 
+        for (int row = 0; row < store.size(); row++) {
+            if (links.containsKey(row))
+                divideQuantity(store, row, links.get(row), linkedRowsById);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
         try {
-            csvPrinter = new CSVPrinter(writer, CSV_FORMAT);
-            csvPrinter.printRecord(HEADERS);
-
-            for (Record record : records) {
-                csvPrinter.printRecord(
-                        record.getId(),
-                        record.getTypeId(),
-                        record.getSource(),
-                        record.getMint(),
-                        record.getAuthority(),
-                        formatLocalDate(record.getDateFrom()),
-                        formatLocalDate(record.getDateTo()),
-                        record.getCoinName(),
-                        record.getAlloy(),
-                        record.getValue(),
-                        record.getQuantity(),
-                        record.getPurity(),
-                        record.getRawWeight(),
-                        record.getFineWeight(),
-                        record.getTaille(),
-                        record.getHigherAuthority(),
-                        record.getAlternativeCoinName(),
-                        record.getAlternativeTypeId(),
-                        record.getValueInHourlyWages());
-            }
+            pool.submit(() -> IntStream.range(0, store.size()).parallel()
+                    .forEach(row -> computeValueInHourlyWages(store, row, wages))).get();
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while post-processing the records!", ie);
+        }
+        catch (ExecutionException ee) {
+            throw new IOException("Failed to post-process the records!", ee.getCause());
         }
         finally {
-            writer.flush();
-            writer.close();
+            pool.shutdown();
         }
 
-        return writer;
+        return store;
+    }
+
+    /**
+     * Determines if we should base the quantity coins of a record on its links,
+     * and if so, divides the quantity coins between the record and the linked records.
+     *
+     * @param store          The record store.
+     * @param row            The row of the record.
+     * @param links          The ids of the linked records.
+     * @param linkedRowsById The rows of the linked records by their id.
+     */
+    private void divideQuantity(RecordStore store, int row, String[] links, Map<String, Integer> linkedRowsById) {
+        BigDecimal quantity = store.getDecimal(Column.QUANTITY, row);
+        if ((quantity == null) || (quantity.compareTo(BigDecimal.ZERO) != 0))
+            return;
+
+        Stream.of(links)
+                .map(id -> linkedRowsById.getOrDefault(id, null))
+                .filter(Objects::nonNull)
+                .forEach(linkRow -> {
+                    BigDecimal totalQuantity = store.getDecimal(Column.QUANTITY, linkRow);
+                    long totalDays = store.getTotalDays(row) + store.getTotalDays(linkRow);
+
+                    store.setDecimal(Column.QUANTITY, linkRow,
+                            totalQuantity
+                                    .multiply(new BigDecimal(store.getTotalDays(linkRow)))
+                                    .divide(new BigDecimal(totalDays), RoundingMode.HALF_UP)
+                    );
+
+                    store.setDecimal(Column.QUANTITY, row,
+                            totalQuantity
+                                    .multiply(new BigDecimal(store.getTotalDays(row)))
+                                    .divide(new BigDecimal(totalDays), RoundingMode.HALF_UP)
+                    );
+                });
+    }
+
+    /**
+     * Calculates the coin value of a record in hourly wages.
+     *
+     * @param store The record store.
+     * @param row   The row of the record.
+     * @param wages The mapping between the year and the hourly wage.
+     */
+    private void computeValueInHourlyWages(RecordStore store, int row, Map<Integer, BigDecimal> wages) {
+        BigDecimal value = store.getDecimal(Column.VALUE, row);
+        if (value == null)
+            return;
+
+        long totalDays = 0;
+        BigDecimal totalValue = BigDecimal.ZERO;
+        int toYear = store.getYear(Column.DATE_TO, row);
+        for (int year = store.getYear(Column.DATE_FROM, row); year <= toYear; year++) {
+            if (wages.containsKey(year)) {
+                BigDecimal hourlyWage = wages.get(year);
+                long daysInYear = store.getTotalDaysInYear(row, year);
+
+                totalDays += daysInYear;
+                totalValue = totalValue.add(hourlyWage.multiply(new BigDecimal(daysInYear)));
+            }
+        }
+
+        if (totalDays > 0) {
+            BigDecimal averageWage = totalValue.divide(new BigDecimal(totalDays), RoundingMode.HALF_UP);
+            store.setDecimal(Column.VALUE_IN_HOURLY_WAGES, row, value.divide(averageWage, RoundingMode.HALF_UP));
+        }
+    }
+
+    /**
+     * Writes the given selection of records as CSV to the given writer, record by record.
+     * The writer is flushed, but not closed.
+     *
+     * @param records The selection of records to write.
+     * @param writer  The writer to write the CSV to.
+     * @throws IOException When I/O problems occur.
+     */
+    public void write(RecordSelection records, Writer writer) throws IOException {
+        CSVPrinter csvPrinter = new CSVPrinter(writer, CSV_FORMAT);
+        csvPrinter.printRecord(HEADERS);
+
+        RecordStore store = records.getStore();
+        Object[] values = new Object[COLUMNS.length];
+        for (int i = 0; i < records.size(); i++) {
+            int row = records.getRow(i);
+            for (Column column : COLUMNS) {
+                switch (column.getType()) {
+                    case STRING:
+                        values[column.ordinal()] = store.getString(column, row);
+                        break;
+                    case DATE:
+                        values[column.ordinal()] = formatLocalDate(store.getDate(column, row));
+                        break;
+                    case DECIMAL:
+                        values[column.ordinal()] = store.getDecimal(column, row);
+                        break;
+                }
+            }
+            csvPrinter.printRecord(values);
+        }
+
+        csvPrinter.flush();
     }
 
     /**
@@ -184,15 +270,21 @@ public class Csv {
      * @return The mapping between the year and the hourly wage.
      * @throws IOException When I/O problems occur.
      */
-    private Map<Integer, BigDecimal> getWages(InputStream inputStream) throws IOException {
-        CSVParser parser = new CSVParser(new InputStreamReader(inputStream, Charset.forName("UTF-8")), CSV_FORMAT);
-        return parser.getRecords().stream()
-                .filter(csvRecord -> (csvRecord.get("Year") != null) && csvRecord.get("Year").matches("[0-9]+"))
-                .filter(csvRecord -> (getBigDecimal(csvRecord.get("Hourly wage (VALUEd)"), 2) != null))
-                .collect(Collectors.toMap(
-                        csvRecord -> Integer.parseInt(csvRecord.get("Year")),
-                        csvRecord -> getBigDecimal(csvRecord.get("Hourly wage (VALUEd)"), 2)
-                ));
+    public Map<Integer, BigDecimal> parseWages(InputStream inputStream) throws IOException {
+        Map<Integer, BigDecimal> wages = new HashMap<>();
+
+        try (CSVParser parser = new CSVParser(new InputStreamReader(inputStream, StandardCharsets.UTF_8), CSV_FORMAT)) {
+            for (CSVRecord csvRecord : parser) {
+                String year = csvRecord.get("Year");
+                BigDecimal hourlyWage = getBigDecimal(csvRecord.get("Hourly wage (VALUEd)"), 2);
+                if ((year != null) && year.matches("[0-9]+") && (hourlyWage != null)) {
+                    if (wages.put(Integer.parseInt(year), hourlyWage) != null)
+                        throw new IllegalStateException("Duplicate year " + year + " in the wages CSV");
+                }
+            }
+        }
+
+        return wages;
     }
 
     /**
@@ -212,6 +304,19 @@ public class Csv {
         }
     }
 
+    /**
+     * Parses the date from the CSV to a LocalDate, using the given cache of dates parsed before.
+     *
+     * @param value The date from the CSV.
+     * @param cache The dates parsed before.
+     * @return The LocalDate.
+     */
+    private LocalDate getLocalDate(String value, Map<String, LocalDate> cache) {
+        if (value != null)
+            return cache.computeIfAbsent(value, this::getLocalDate);
+        return null;
+    }
+
     /**
      * Formats a given LocalDate to a date in the CSV.
      *
@@ -225,19 +330,36 @@ public class Csv {
     }
 
     /**
-     * Parses a number from the CSV.
+     * Parses a number from the CSV, using the given cache of numbers parsed before.
      *
      * @param value The number from the CSV.
      * @param scale The scale of the BigDecimal.
+     * @param cache The numbers parsed before with the same scale.
      * @return The parsed number as a BigDecimal.
      */
+    private BigDecimal getBigDecimal(String value, int scale, Map<String, BigDecimal> cache) {
+        if (value != null)
+            return cache.computeIfAbsent(value, v -> getBigDecimal(v, scale));
+        return null;
+    }
+
+    /**
+     * Parses a number from the CSV.
+     *
+     * @param value The number from the CSV.
+     * @param scale The scale of the BigDecimal.
+     * @return The parsed number as a BigDecimal, or null if not a number that fits in a column.
+     */
     private BigDecimal getBigDecimal(String value, int scale) {
         try {
-            if (value != null)
-                return new BigDecimal(value).setScale(scale, BigDecimal.ROUND_HALF_UP);
+            if (value != null) {
+                BigDecimal number = new BigDecimal(value).setScale(scale, RoundingMode.HALF_UP);
+                RecordStore.toUnscaled(number, scale);
+                return number;
+            }
             return null;
         }
-        catch (NumberFormatException ex) {
+        catch (NumberFormatException | ArithmeticException ex) {
             return null;
         }
     }
@@ -0,0 +1,187 @@
+package org.iish.coins.record;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The mint houses of the map, parsed once from the GeoJSON of the mint houses: for every mint house the years
+ * in which it minted for each of its authorities. Every feature holds a single period of a mint house under a single
+ * authority; only the features with a mint house, an authority and a period are taken into account, and a mint house
+ * is identified by the id of its first feature, as drawn on the map.
+ */
+public class GeoModel {
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeoModel.class);
+    private static final Pattern YEAR = Pattern.compile("^\\s*(\\d+)");
+
+    public static final GeoModel EMPTY = new GeoModel(Collections.emptyList());
+
+    private final List<MintHouse> mintHouses;
+
+    /**
+     * Creates the model of the map.
+     *
+     * @param mintHouses The mint houses, in the order of their first feature.
+     */
+    private GeoModel(List<MintHouse> mintHouses) {
+        this.mintHouses = Collections.unmodifiableList(mintHouses);
+    }
+
+    /**
+     * Parses the GeoJSON with the mint houses.
+     *
+     * @param geoMints The GeoJSON with the mint houses, or null.
+     * @return The model of the map, which is empty if the GeoJSON is missing or malformed.
+     */
+    public static GeoModel parse(byte[] geoMints) {
+        if (geoMints == null)
+            return EMPTY;
+
+        try {
+            JsonElement json = JsonParser.parseReader(new InputStreamReader(
+                    new ByteArrayInputStream(geoMints), StandardCharsets.UTF_8));
+
+            Map<String, MintHouse> mintHouses = new LinkedHashMap<>();
+            for (JsonElement feature : json.getAsJsonObject().getAsJsonArray("features")) {
+                JsonObject properties = feature.getAsJsonObject().getAsJsonObject("properties");
+                String mint = getString(properties, "MINT");
+                String authority = getString(properties, "AUTHORITY");
+                Integer fromYear = getYear(properties, "DATEfrom");
+                Integer toYear = getYear(properties, "DATEto");
+
+                if ((mint != null) && (authority != null) && (fromYear != null) && (toYear != null)) {
+                    mintHouses.computeIfAbsent(mint, name -> new MintHouse(getString(properties, "ID"), name))
+                            .addPeriod(authority, fromYear, toYear);
+                }
+            }
+
+            return new GeoModel(new ArrayList<>(mintHouses.values()));
+        }
+        catch (JsonParseException | IllegalStateException | ClassCastException e) {
+            LOGGER.warn("Cannot parse the GeoJSON with the mint houses: {}", e.getMessage());
+            return EMPTY;
+        }
+    }
+
+    /**
+     * Returns the mint houses.
+     *
+     * @return The mint houses, in the order of their first feature.
+     */
+    public List<MintHouse> getMintHouses() {
+        return mintHouses;
+    }
+
+    /**
+     * Returns the value of the given property of a feature.
+     *
+     * @param properties The properties of the feature, or null.
+     * @param name       The name of the property.
+     * @return The value, or null if missing.
+     */
+    private static String getString(JsonObject properties, String name) {
+        if ((properties == null) || !properties.has(name) || properties.get(name).isJsonNull())
+            return null;
+        return properties.get(name).getAsString();
+    }
+
+    /**
+     * Returns the year of the date in the given property of a feature, formatted as 'YYYY/MM/DD'.
+     *
+     * @param properties The properties of the feature, or null.
+     * @param name       The name of the property.
+     * @return The year, or null if missing.
+     */
+    private static Integer getYear(JsonObject properties, String name) {
+        String date = getString(properties, name);
+        if (date == null)
+            return null;
+
+        Matcher matcher = YEAR.matcher(date);
+        return matcher.find() ? Integer.valueOf(matcher.group(1)) : null;
+    }
+
+    /**
+     * A mint house on the map, with the years in which it minted for each of its authorities.
+     */
+    public static class MintHouse {
+        private final String id;
+        private final String name;
+        private final Map<String, BitSet> yearsByAuthority = new LinkedHashMap<>();
+        private final BitSet years = new BitSet();
+
+        /**
+         * Creates a mint house without periods.
+         *
+         * @param id   The id of the feature drawn on the map, or null.
+         * @param name The name of the mint house.
+         */
+        private MintHouse(String id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        /**
+         * Adds a period in which the mint house minted for the given authority.
+         *
+         * @param authority The authority.
+         * @param fromYear  The first year.
+         * @param toYear    The last year.
+         */
+        private void addPeriod(String authority, int fromYear, int toYear) {
+            // An authority without any year still counts as a part of the mint house
+            BitSet authorityYears = yearsByAuthority.computeIfAbsent(authority, a -> new BitSet());
+            if (fromYear <= toYear) {
+                authorityYears.set(fromYear, toYear + 1);
+                years.set(fromYear, toYear + 1);
+            }
+        }
+
+        /**
+         * Returns the id of the feature of this mint house drawn on the map.
+         *
+         * @return The id, or null if the feature has no id.
+         */
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Returns the name of the mint house.
+         *
+         * @return The name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the years in which the mint house minted, by authority.
+         *
+         * @return The years by authority, in the order of their first feature.
+         */
+        public Map<String, BitSet> getYearsByAuthority() {
+            return yearsByAuthority;
+        }
+
+        /**
+         * Determines whether the mint house minted in the given year, for any authority.
+         *
+         * @param year The year.
+         * @return True if the mint house minted in the given year.
+         */
+        public boolean isActiveIn(int year) {
+            return (year >= 0) && years.get(year);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.iish.coins.record;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Interval index over the periods of the records, from the start date up to the end date, as sorted endpoint arrays:
+ * the rows sorted by their start date and the rows sorted by their end date. Records missing a date are not indexed.
+ * Lookups on a range of epoch days are binary searches, resulting in a bitmap of the matching rows.
+ */
+public class IntervalIndex {
+    private final int size;
+    private final int[] fromDays;
+    private final int[] toDays;
+
+    private final int[] sortedFromDays;
+    private final int[] rowsByFromDay;
+    private final int[] sortedToDays;
+    private final int[] rowsByToDay;
+
+    /**
+     * Builds the index of the periods of the records.
+     *
+     * @param fromDays The epoch days of the start dates, indexed by row.
+     * @param toDays   The epoch days of the end dates, indexed by row.
+     */
+    public IntervalIndex(int[] fromDays, int[] toDays) {
+        this.size = fromDays.length;
+        this.fromDays = fromDays;
+        this.toDays = toDays;
+
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            if ((fromDays[row] != RecordStore.NULL_DATE) && (toDays[row] != RecordStore.NULL_DATE))
+                count++;
+        }
+
+        this.sortedFromDays = new int[count];
+        this.rowsByFromDay = new int[count];
+        this.sortedToDays = new int[count];
+        this.rowsByToDay = new int[count];
+        sort(fromDays, count, sortedFromDays, rowsByFromDay);
+        sort(toDays, count, sortedToDays, rowsByToDay);
+    }
+
+    /**
+     * Returns the rows of the records of which the period lies completely within the given range,
+     * so with both the start and the end date after the start of the range and before the end of the range.
+     *
+     * @param fromDay The epoch day of the start of the range (exclusive).
+     * @param toDay   The epoch day of the end of the range (exclusive).
+     * @return A bitmap of the matching rows.
+     */
+    public BitSet getRowsWithin(int fromDay, int toDay) {
+        BitSet rows = new BitSet(size);
+
+        // Scan the smaller of both candidate sets and check the other date of each candidate
+        int startsAfter = firstGreaterThan(sortedFromDays, fromDay);
+        int endsBefore = firstAtLeast(sortedToDays, toDay);
+        if ((sortedFromDays.length - startsAfter) <= endsBefore) {
+            for (int i = startsAfter; i < sortedFromDays.length; i++) {
+                int row = rowsByFromDay[i];
+                if (toDays[row] < toDay)
+                    rows.set(row);
+            }
+        }
+        else {
+            for (int i = 0; i < endsBefore; i++) {
+                int row = rowsByToDay[i];
+                if (fromDays[row] > fromDay)
+                    rows.set(row);
+            }
+        }
+
+        return rows;
+    }
+
+    /**
+     * Returns the rows of the records of which the start or the end date lies within the given range.
+     *
+     * @param fromDay The epoch day of the start of the range (exclusive).
+     * @param toDay   The epoch day of the end of the range (exclusive).
+     * @return A bitmap of the matching rows.
+     */
+    public BitSet getRowsStartingOrEndingWithin(int fromDay, int toDay) {
+        BitSet rows = new BitSet(size);
+
+        int startsBefore = firstAtLeast(sortedFromDays, toDay);
+        for (int i = firstGreaterThan(sortedFromDays, fromDay); i < startsBefore; i++)
+            rows.set(rowsByFromDay[i]);
+
+        int endsBefore = firstAtLeast(sortedToDays, toDay);
+        for (int i = firstGreaterThan(sortedToDays, fromDay); i < endsBefore; i++)
+            rows.set(rowsByToDay[i]);
+
+        return rows;
+    }
+
+    /**
+     * Sorts the rows of the records with both dates by the given epoch days.
+     *
+     * @param days       The epoch days, indexed by row.
+     * @param count      The number of records with both dates.
+     * @param sortedDays The array to fill with the sorted epoch days.
+     * @param sortedRows The array to fill with the rows in the same order.
+     */
+    private void sort(int[] days, int count, int[] sortedDays, int[] sortedRows) {
+        // Sort on the day in the upper half and the row in the lower half of a long
+        long[] daysAndRows = new long[count];
+        for (int row = 0, i = 0; row < size; row++) {
+            if ((fromDays[row] != RecordStore.NULL_DATE) && (toDays[row] != RecordStore.NULL_DATE))
+                daysAndRows[i++] = ((long) days[row] << 32) | row;
+        }
+        Arrays.sort(daysAndRows);
+
+        for (int i = 0; i < count; i++) {
+            sortedDays[i] = (int) (daysAndRows[i] >> 32);
+            sortedRows[i] = (int) daysAndRows[i];
+        }
+    }
+
+    /**
+     * Determines the position of the first value greater than the given value.
+     *
+     * @param sorted The sorted values.
+     * @param value  The value.
+     * @return The position, or the number of values if there is none.
+     */
+    private static int firstGreaterThan(int[] sorted, int value) {
+        return (value == Integer.MAX_VALUE) ? sorted.length : firstAtLeast(sorted, value + 1);
+    }
+
+    /**
+     * Determines the position of the first value greater than or equal to the given value.
+     *
+     * @param sorted The sorted values.
+     * @param value  The value.
+     * @return The position, or the number of values if there is none.
+     */
+    private static int firstAtLeast(int[] sorted, int value) {
+        int low = 0, high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
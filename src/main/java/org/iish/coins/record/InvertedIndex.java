@@ -0,0 +1,114 @@
+package org.iish.coins.record;
+
+import java.util.*;
+
+/**
+ * Inverted index of a dictionary coded string column: for each code the sorted rows of the records with that value,
+ * and for each case-folded value the codes of the values that are equal ignoring case.
+ * Lookups result in a bitmap of the matching rows.
+ */
+public class InvertedIndex {
+    private static final int[] NO_CODES = new int[0];
+
+    private final int size;
+    private final int[][] postings;
+    private final Map<String, int[]> codesByFoldedValue;
+
+    /**
+     * Builds the index of a string column.
+     *
+     * @param codes      The codes of the column, indexed by row.
+     * @param dictionary The distinct values of the column, indexed by their code.
+     */
+    public InvertedIndex(int[] codes, String[] dictionary) {
+        this.size = codes.length;
+
+        int[] counts = new int[dictionary.length];
+        for (int code : codes) {
+            if (code != RecordStore.NULL_CODE)
+                counts[code]++;
+        }
+
+        this.postings = new int[dictionary.length][];
+        for (int code = 0; code < dictionary.length; code++)
+            postings[code] = new int[counts[code]];
+
+        int[] positions = new int[dictionary.length];
+        for (int row = 0; row < codes.length; row++) {
+            int code = codes[row];
+            if (code != RecordStore.NULL_CODE)
+                postings[code][positions[code]++] = row;
+        }
+
+        this.codesByFoldedValue = new HashMap<>();
+        for (int code = 0; code < dictionary.length; code++) {
+            codesByFoldedValue.merge(fold(dictionary[code]), new int[]{code}, (first, second) -> {
+                int[] merged = Arrays.copyOf(first, first.length + second.length);
+                System.arraycopy(second, 0, merged, first.length, second.length);
+                return merged;
+            });
+        }
+    }
+
+    /**
+     * Returns the rows of the records with a value equal to the given value, ignoring case.
+     *
+     * @param value The value.
+     * @return A bitmap of the matching rows.
+     */
+    public BitSet getRowsEqualIgnoreCase(String value) {
+        return getRows(getCodesEqualIgnoreCase(value));
+    }
+
+    /**
+     * Returns the codes of the values equal to the given value, ignoring case.
+     *
+     * @param value The value.
+     * @return The codes. The returned array must not be modified.
+     */
+    public int[] getCodesEqualIgnoreCase(String value) {
+        return codesByFoldedValue.getOrDefault(fold(value), NO_CODES);
+    }
+
+    /**
+     * Returns the rows of the records with one of the given values.
+     *
+     * @param codes The codes of the values.
+     * @return A bitmap of the matching rows.
+     */
+    public BitSet getRows(int[] codes) {
+        BitSet rows = new BitSet(size);
+        for (int code : codes) {
+            for (int row : postings[code])
+                rows.set(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Determines whether every value is held by a single record, like the identifier of a record.
+     *
+     * @return True if no two records have the same value.
+     */
+    public boolean isUnique() {
+        for (int[] rows : postings) {
+            if (rows.length > 1)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Folds the case of a value, so that two values are equal after folding
+     * if and only if they are equal ignoring case (as {@link String#equalsIgnoreCase(String)}).
+     *
+     * @param value The value.
+     * @return The folded value.
+     */
+    static String fold(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        return new String(chars);
+    }
+}
@@ -0,0 +1,140 @@
+package org.iish.coins.record;
+
+import java.text.Collator;
+import java.util.*;
+
+/**
+ * Aggregates records into the coverage of the mint houses and the authorities on the map, as in map.js.
+ * A mint house minted for each of its authorities in the years given by the GeoJSON of the mint houses;
+ * a year of a mint house and an authority has data if a filtered record with a quantity of coins, of that mint house
+ * and that authority, was minted in that year. Only the years within the given range are taken into account.
+ * <p>
+ * Every mint house is split in parts by its authorities, and every authority by its mint houses. The percentage
+ * of a part is the share of its years with data or, by year, whether the given year has data; the percentage of
+ * a feature is the average of its parts.
+ */
+public class MapAggregator {
+    private final Integer fromYear;
+    private final Integer toYear;
+    private final Integer year;
+    private final boolean byYear;
+
+    /**
+     * Creates an aggregator.
+     *
+     * @param fromYear The first year to take into account, or null.
+     * @param toYear   The last year to take into account, or null.
+     * @param year     The year to show the map of, or null to show all mint houses.
+     * @param byYear   Whether to compute the percentages of the given year only.
+     * @throws IllegalArgumentException When the percentages by year are requested without a year.
+     */
+    public MapAggregator(Integer fromYear, Integer toYear, Integer year, boolean byYear) {
+        if (byYear && (year == null))
+            throw new IllegalArgumentException("Missing year");
+
+        this.fromYear = fromYear;
+        this.toYear = toYear;
+        this.year = year;
+        this.byYear = byYear;
+    }
+
+    /**
+     * Aggregates the join of the records with the map.
+     *
+     * @param coverage The join of the records with the map, with the years with data.
+     * @return The coverage of the mint houses and the authorities.
+     */
+    public MapHolder aggregate(MapCoverage coverage) {
+        GeoModel geo = coverage.getGeo();
+        Map<String, MapFeature> mints = new LinkedHashMap<>();
+        Map<String, List<MapFeature.Part>> partsByAuthority = new LinkedHashMap<>();
+        for (GeoModel.MintHouse mintHouse : geo.getMintHouses()) {
+            List<MapFeature.Part> parts = new ArrayList<>();
+            for (Map.Entry<String, BitSet> authority : mintHouse.getYearsByAuthority().entrySet()) {
+                BitSet years = getYearsInRange(authority.getValue());
+
+                BitSet withData = (BitSet) coverage.getYearsWithData(mintHouse.getName(), authority.getKey()).clone();
+                withData.and(years);
+
+                List<MapFeature.Part> authorityParts =
+                        partsByAuthority.computeIfAbsent(authority.getKey(), a -> new ArrayList<>());
+                MapFeature.Part part = getPart(authority.getKey(), years, withData);
+                if (part != null) {
+                    parts.add(part);
+                    authorityParts.add(new MapFeature.Part(mintHouse.getName(),
+                            part.getYears(), part.getYearsWithData(), part.getPercentage()));
+                }
+            }
+
+            if (mintHouse.getId() != null) {
+                mints.put(mintHouse.getId(), getFeature(
+                        (year != null) ? mintHouse.isActiveIn(year) : null, parts));
+            }
+        }
+
+        Map<String, MapFeature> authorities = new LinkedHashMap<>();
+        for (Map.Entry<String, List<MapFeature.Part>> authority : partsByAuthority.entrySet())
+            authorities.put(authority.getKey(), getFeature(null, authority.getValue()));
+
+        return new MapHolder(mints, authorities);
+    }
+
+    /**
+     * Returns the given years within the range.
+     *
+     * @param years The years.
+     * @return A copy of the years, without the years outside the range.
+     */
+    private BitSet getYearsInRange(BitSet years) {
+        BitSet inRange = (BitSet) years.clone();
+        if ((fromYear != null) && (fromYear > 0))
+            inRange.clear(0, fromYear);
+        if (toYear != null)
+            inRange.clear(Math.max(0, toYear + 1), Math.max(inRange.length(), toYear + 1));
+        return inRange;
+    }
+
+    /**
+     * Determines the part of a feature.
+     *
+     * @param name     The name of the authority or the mint house.
+     * @param years    The years in which the mint house minted for the authority, within the range.
+     * @param withData The years with data.
+     * @return The part, or null if by year and the mint house did not mint for the authority in the given year.
+     */
+    private MapFeature.Part getPart(String name, BitSet years, BitSet withData) {
+        int percentage;
+        if (byYear) {
+            if ((year < 0) || !years.get(year))
+                return null;
+            percentage = withData.get(year) ? 100 : 0;
+        }
+        else if (withData.isEmpty()) {
+            percentage = 0;
+        }
+        else {
+            // Some years with data never show as 0%
+            double without = years.cardinality() - withData.cardinality();
+            percentage = 100 - (int) Math.round(without / (years.cardinality() / 100.0));
+            percentage = (percentage == 0) ? 1 : percentage;
+        }
+
+        return new MapFeature.Part(name, years.cardinality(), withData.cardinality(), percentage);
+    }
+
+    /**
+     * Determines a feature from its parts.
+     *
+     * @param visible Whether the feature is shown in the given year, or null if not determined.
+     * @param parts   The parts.
+     * @return The feature, with its parts sorted by percentage descending and then by name.
+     */
+    private MapFeature getFeature(Boolean visible, List<MapFeature.Part> parts) {
+        Collator collator = Collator.getInstance(Locale.ROOT);
+        parts.sort(Comparator.comparingInt(MapFeature.Part::getPercentage).reversed()
+                .thenComparing(MapFeature.Part::getName, collator));
+
+        double percentage = parts.stream().mapToInt(MapFeature.Part::getPercentage).average().orElse(0);
+        return new MapFeature(visible, percentage, parts);
+    }
+}
@@ -0,0 +1,150 @@
+package org.iish.coins.record;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * The join of filtered records with the mint houses on the map, independent of the year shown: for every mint house
+ * and each of its authorities, the years with data. A year of a mint house and an authority has data if a record
+ * with a quantity of coins, of that mint house and that authority, was minted in that year.
+ */
+public class MapCoverage {
+    private static final int ENTRY_BYTES = 64;
+
+    private final GeoModel geo;
+    private final Map<String, Map<String, BitSet>> yearsWithData;
+
+    /**
+     * Creates the join.
+     *
+     * @param geo           The model of the map.
+     * @param yearsWithData The years with data, by mint house and by authority.
+     */
+    private MapCoverage(GeoModel geo, Map<String, Map<String, BitSet>> yearsWithData) {
+        this.geo = geo;
+        this.yearsWithData = yearsWithData;
+    }
+
+    /**
+     * Joins the given records with the mint houses on the given map.
+     * The values of the records may list several mint houses or authorities, separated by a slash.
+     *
+     * @param geo     The model of the map.
+     * @param records The records.
+     * @return The join.
+     */
+    public static MapCoverage join(GeoModel geo, RecordSelection records) {
+        Map<String, Map<String, BitSet>> yearsWithData = new HashMap<>();
+        for (GeoModel.MintHouse mintHouse : geo.getMintHouses()) {
+            Map<String, BitSet> byAuthority = new HashMap<>();
+            for (String authority : mintHouse.getYearsByAuthority().keySet())
+                byAuthority.put(authority, new BitSet());
+            yearsWithData.put(mintHouse.getName(), byAuthority);
+        }
+
+        RecordStore store = records.getStore();
+        String[] mintDictionary = store.getDictionary(Column.MINT);
+        String[] authorityDictionary = store.getDictionary(Column.AUTHORITY);
+
+        // Resolve the years with data to add to only once for every combination of codes found in the records
+        Map<Long, BitSet[]> targets = new HashMap<>();
+        int[] mints = store.getCodes(Column.MINT);
+        int[] authorities = store.getCodes(Column.AUTHORITY);
+        int[] fromDays = store.getEpochDays(Column.DATE_FROM);
+        int[] toDays = store.getEpochDays(Column.DATE_TO);
+        long[] quantities = store.getUnscaledValues(Column.QUANTITY);
+        for (int i = 0; i < records.size(); i++) {
+            int row = records.getRow(i);
+            if ((mints[row] == RecordStore.NULL_CODE) || (authorities[row] == RecordStore.NULL_CODE)
+                    || (fromDays[row] == RecordStore.NULL_DATE) || (toDays[row] == RecordStore.NULL_DATE)
+                    || (quantities[row] == RecordStore.NULL_DECIMAL))
+                continue;
+
+            BitSet[] target = targets.computeIfAbsent(((long) mints[row] << 32) | authorities[row],
+                    codes -> getTarget(yearsWithData,
+                            mintDictionary[mints[row]], authorityDictionary[authorities[row]]));
+            if (target.length == 0)
+                continue;
+
+            int from = Math.max(0, LocalDate.ofEpochDay(fromDays[row]).getYear());
+            int to = LocalDate.ofEpochDay(toDays[row]).getYear();
+            if (from <= to) {
+                for (BitSet years : target)
+                    years.set(from, to + 1);
+            }
+        }
+
+        return new MapCoverage(geo, yearsWithData);
+    }
+
+    /**
+     * Returns the model of the map joined with.
+     *
+     * @return The model of the map.
+     */
+    public GeoModel getGeo() {
+        return geo;
+    }
+
+    /**
+     * Returns the years with data of the given mint house and authority.
+     *
+     * @param mint      The name of the mint house.
+     * @param authority The name of the authority.
+     * @return The years with data. The returned set must not be modified.
+     */
+    public BitSet getYearsWithData(String mint, String authority) {
+        return yearsWithData.get(mint).get(authority);
+    }
+
+    /**
+     * Estimates the memory held by this join.
+     *
+     * @return The estimated number of bytes.
+     */
+    public long getSizeInBytes() {
+        long size = ENTRY_BYTES;
+        for (Map<String, BitSet> byAuthority : yearsWithData.values()) {
+            for (BitSet years : byAuthority.values())
+                size += ENTRY_BYTES + (years.size() / 8);
+        }
+        return size;
+    }
+
+    /**
+     * Determines the years with data to add to for a mint house value and an authority value of the records.
+     *
+     * @param yearsWithData The years with data, by mint house and by authority.
+     * @param mintValue     The value of the mint house, possibly listing several mint houses.
+     * @param authority     The value of the authority, possibly listing several authorities.
+     * @return The years with data of every combination of the listed mint houses and authorities on the map.
+     */
+    private static BitSet[] getTarget(Map<String, Map<String, BitSet>> yearsWithData,
+                                      String mintValue, String authority) {
+        List<BitSet> target = new ArrayList<>();
+        for (String mint : getValues(mintValue)) {
+            Map<String, BitSet> byAuthority = yearsWithData.get(mint);
+            for (String authorityValue : getValues(authority)) {
+                if ((byAuthority != null) && byAuthority.containsKey(authorityValue))
+                    target.add(byAuthority.get(authorityValue));
+            }
+        }
+        return target.toArray(new BitSet[0]);
+    }
+
+    /**
+     * Splits the given value into the mint houses or authorities it lists: separated by a slash,
+     * and possibly marked as uncertain with a question mark.
+     *
+     * @param value The value.
+     * @return The mint houses or authorities.
+     */
+    private static String[] getValues(String value) {
+        String[] values = value.split("/", -1);
+        for (int i = 0; i < values.length; i++) {
+            values[i] = values[i].endsWith("?")
+                    ? values[i].substring(0, values[i].length() - 1).trim() : values[i].trim();
+        }
+        return values;
+    }
+}
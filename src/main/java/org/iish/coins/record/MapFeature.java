@@ -0,0 +1,114 @@
+package org.iish.coins.record;
+
+import java.util.List;
+
+/**
+ * Holds the coverage of a single feature on the map, a mint house or an authority: for every part, the authorities
+ * of a mint house or the mint houses of an authority, the share of its years with data in the filtered records.
+ */
+public class MapFeature {
+    private Boolean visible;
+    private double percentage;
+    private List<Part> parts;
+
+    /**
+     * Sets up the MapFeature.
+     *
+     * @param visible    Whether the feature is shown in the given year, or null if not determined.
+     * @param percentage The average percentage of the parts.
+     * @param parts      The parts, ordered by percentage descending and then by name.
+     */
+    public MapFeature(Boolean visible, double percentage, List<Part> parts) {
+        this.visible = visible;
+        this.percentage = percentage;
+        this.parts = parts;
+    }
+
+    /**
+     * Obtain whether the feature is shown in the given year.
+     *
+     * @return True if shown, or null if not determined.
+     */
+    public Boolean getVisible() {
+        return visible;
+    }
+
+    /**
+     * Obtain the average percentage of the parts.
+     *
+     * @return The percentage.
+     */
+    public double getPercentage() {
+        return percentage;
+    }
+
+    /**
+     * Obtain the parts.
+     *
+     * @return The parts, ordered by percentage descending and then by name.
+     */
+    public List<Part> getParts() {
+        return parts;
+    }
+
+    /**
+     * Holds a single part of a feature: an authority of a mint house, or a mint house of an authority.
+     */
+    public static class Part {
+        private String name;
+        private int years;
+        private int yearsWithData;
+        private int percentage;
+
+        /**
+         * Sets up the Part.
+         *
+         * @param name          The name of the authority or the mint house.
+         * @param years         The number of years in which the mint house minted for the authority.
+         * @param yearsWithData The number of those years with data in the filtered records.
+         * @param percentage    The percentage of the years with data.
+         */
+        public Part(String name, int years, int yearsWithData, int percentage) {
+            this.name = name;
+            this.years = years;
+            this.yearsWithData = yearsWithData;
+            this.percentage = percentage;
+        }
+
+        /**
+         * Obtain the name of the authority or the mint house.
+         *
+         * @return The name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Obtain the number of years in which the mint house minted for the authority.
+         *
+         * @return The number of years.
+         */
+        public int getYears() {
+            return years;
+        }
+
+        /**
+         * Obtain the number of years with data in the filtered records.
+         *
+         * @return The number of years.
+         */
+        public int getYearsWithData() {
+            return yearsWithData;
+        }
+
+        /**
+         * Obtain the percentage of the years with data.
+         *
+         * @return The percentage.
+         */
+        public int getPercentage() {
+            return percentage;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.iish.coins.record;
+
+import java.util.Map;
+
+/**
+ * Holds the coverage of the features on the map: the mint houses keyed by the id of their feature
+ * and the authorities keyed by their name.
+ */
+public class MapHolder {
+    private Map<String, MapFeature> mints;
+    private Map<String, MapFeature> authorities;
+
+    /**
+     * Sets up the MapHolder.
+     *
+     * @param mints       The coverage of the mint houses, by the id of their feature.
+     * @param authorities The coverage of the authorities, by their name.
+     */
+    public MapHolder(Map<String, MapFeature> mints, Map<String, MapFeature> authorities) {
+        this.mints = mints;
+        this.authorities = authorities;
+    }
+
+    /**
+     * Obtain the coverage of the mint houses.
+     *
+     * @return The coverage, by the id of the feature.
+     */
+    public Map<String, MapFeature> getMints() {
+        return mints;
+    }
+
+    /**
+     * Obtain the coverage of the authorities.
+     *
+     * @return The coverage, by the name of the authority.
+     */
+    public Map<String, MapFeature> getAuthorities() {
+        return authorities;
+    }
+}
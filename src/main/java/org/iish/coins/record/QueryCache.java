@@ -0,0 +1,151 @@
+package org.iish.coins.record;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bounded cache of the results of queries on a single record store, keyed by the normalized query.
+ * The joins of the results with the map of the same dataset version are cached next to the results, so moving
+ * through the years on the map does not join the records again.
+ * The size of the cache is bounded by an estimate of the memory held by the cached results;
+ * the least recently used results are evicted first. An eighth of the memory is reserved for the joins with the map.
+ */
+public class QueryCache {
+    private static final int ENTRY_BYTES = 128;
+    private static final int ROW_BYTES = 4;
+    private static final int VALUE_BYTES = 40;
+
+    private final RecordStore store;
+    private final GeoModel geoModel;
+    private final long maxBytes;
+    private final Cache<String, RecordsHolder> cache;
+    private final Cache<String, MapCoverage> mapCache;
+
+    /**
+     * Creates an empty cache for the given record store and map of a single dataset version.
+     *
+     * @param store    The records queried.
+     * @param geoModel The map the results are joined with.
+     * @param maxBytes The maximum estimated number of bytes held by the cached results.
+     */
+    public QueryCache(RecordStore store, GeoModel geoModel, long maxBytes) {
+        long maxMapBytes = Math.max(0, maxBytes) / 8;
+        this.store = store;
+        this.geoModel = geoModel;
+        this.maxBytes = maxBytes;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(Math.max(0, maxBytes) - maxMapBytes)
+                .weigher(QueryCache::getSize)
+                .recordStats()
+                .build();
+        this.mapCache = CacheBuilder.newBuilder()
+                .maximumWeight(maxMapBytes)
+                .weigher(QueryCache::getMapSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the records queried.
+     *
+     * @return The record store.
+     */
+    public RecordStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the map the results are joined with.
+     *
+     * @return The model of the map.
+     */
+    public GeoModel getGeoModel() {
+        return geoModel;
+    }
+
+    /**
+     * Returns the cached result of the given query, or computes and caches it if missing.
+     *
+     * @param key    The normalized query.
+     * @param loader Computes the result of the query.
+     * @return The result of the query.
+     */
+    public RecordsHolder get(String key, Callable<RecordsHolder> loader) {
+        try {
+            return cache.get(key, loader);
+        }
+        catch (ExecutionException ee) {
+            throw new IllegalStateException(ee.getCause());
+        }
+    }
+
+    /**
+     * Returns the cached join of the result of the given query with the map, or computes and caches it if missing.
+     *
+     * @param key    The normalized query.
+     * @param loader Joins the result of the query with the map.
+     * @return The join of the result of the query with the map.
+     */
+    public MapCoverage getMapCoverage(String key, Callable<MapCoverage> loader) {
+        try {
+            return mapCache.get(key, loader);
+        }
+        catch (ExecutionException ee) {
+            throw new IllegalStateException(ee.getCause());
+        }
+    }
+
+    /**
+     * Returns the statistics of this cache.
+     *
+     * @return The number of entries, the number of joins with the map, the maximum size,
+     * and the number of hits, misses and evictions.
+     */
+    public Map<String, Object> getStatistics() {
+        CacheStats stats = cache.stats();
+
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("entries", cache.size());
+        statistics.put("mapEntries", mapCache.size());
+        statistics.put("maxKilobytes", maxBytes / 1024);
+        statistics.put("hits", stats.hitCount());
+        statistics.put("misses", stats.missCount());
+        statistics.put("evictions", stats.evictionCount());
+        return statistics;
+    }
+
+    /**
+     * Estimates the memory held by a cached result.
+     *
+     * @param key    The normalized query.
+     * @param result The result of the query.
+     * @return The estimated number of bytes.
+     */
+    private static int getSize(String key, RecordsHolder result) {
+        long size = ENTRY_BYTES + (2L * key.length()) + ((long) ROW_BYTES * result.getRecords().size());
+        for (Set<String> values : result.getValues().values())
+            size += (long) VALUE_BYTES * values.size();
+        for (Map<String, Integer> counts : result.getValueCounts().values())
+            size += (long) VALUE_BYTES * counts.size();
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Estimates the memory held by a cached join with the map.
+     *
+     * @param key      The normalized query.
+     * @param coverage The join of the result of the query with the map.
+     * @return The estimated number of bytes.
+     */
+    private static int getMapSize(String key, MapCoverage coverage) {
+        long size = ENTRY_BYTES + (2L * key.length()) + coverage.getSizeInBytes();
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+}
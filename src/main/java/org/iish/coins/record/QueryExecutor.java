@@ -0,0 +1,202 @@
+package org.iish.coins.record;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Executes a query plan in a single pass over the matching rows, collecting the rows, the counts of the values
+ * of the facet fields and the minimum and maximum date at once. Every thread of a parallel execution collects
+ * into its own accumulator; the accumulators are merged in the order of the rows at the end.
+ */
+public class QueryExecutor {
+    private final RecordStore store;
+    private final List<String> fields;
+    private final int[][] facetCodes;
+    private final boolean[] unique;
+    private final String[][] dictionaries;
+    private final int[] fromDays;
+    private final int[] toDays;
+
+    /**
+     * Creates an executor on the given records.
+     *
+     * @param store  The records.
+     * @param fields The fields to count the values of; fields which are not string columns are ignored,
+     *               and the counts of fields with a unique value for every record, like the UID, are left out.
+     */
+    public QueryExecutor(RecordStore store, Collection<String> fields) {
+        this.store = store;
+
+        List<String> facetFields = new ArrayList<>();
+        List<Column> columns = new ArrayList<>();
+        for (String field : fields) {
+            Column column = Column.forName(field);
+            if ((column != null) && (column.getType() == Column.Type.STRING)) {
+                facetFields.add(field);
+                columns.add(column);
+            }
+        }
+
+        this.fields = facetFields;
+        this.facetCodes = columns.stream().map(store::getCodes).toArray(int[][]::new);
+        this.dictionaries = columns.stream().map(store::getDictionary).toArray(String[][]::new);
+        this.unique = new boolean[columns.size()];
+        for (int i = 0; i < unique.length; i++)
+            unique[i] = store.getIndex(columns.get(i)).isUnique();
+        this.fromDays = store.getEpochDays(Column.DATE_FROM);
+        this.toDays = store.getEpochDays(Column.DATE_TO);
+    }
+
+    /**
+     * Executes the given plan.
+     *
+     * @param plan The query plan.
+     * @return The matching records, the values found with their counts for each field, and the minimum and
+     * maximum year.
+     */
+    public RecordsHolder execute(QueryPlan plan) {
+        Accumulator result = plan.getRows(store).collect(Accumulator::new, Accumulator::accept, Accumulator::merge);
+
+        Map<String, Map<String, Integer>> valueCounts = new LinkedHashMap<>();
+        Map<String, Set<String>> values = new LinkedHashMap<>();
+        for (int i = 0; i < fields.size(); i++) {
+            if (unique[i]) {
+                Set<String> found = getValues(dictionaries[i], facetCodes[i], result.rows, result.size);
+                if (!found.isEmpty())
+                    values.put(fields.get(i), found);
+            }
+            else {
+                Map<String, Integer> counts = getValueCounts(dictionaries[i], result.counts[i]);
+                if (!counts.isEmpty()) {
+                    valueCounts.put(fields.get(i), counts);
+                    values.put(fields.get(i), new LinkedHashSet<>(counts.keySet()));
+                }
+            }
+        }
+
+        boolean found = result.minDay <= result.maxDay;
+        return new RecordsHolder(
+                new RecordSelection(store, Arrays.copyOf(result.rows, result.size)), values, valueCounts,
+                found ? LocalDate.ofEpochDay(result.minDay).getYear() : null,
+                found ? LocalDate.ofEpochDay(result.maxDay).getYear() : null);
+    }
+
+    /**
+     * Orders the values found from the most to the least frequent value;
+     * equally frequent values remain ordered by their code, thus by value.
+     *
+     * @param dictionary The distinct values, indexed by their code.
+     * @param counts     The number of records with each value, indexed by code.
+     * @return The values found with their counts.
+     */
+    private static Map<String, Integer> getValueCounts(String[] dictionary, int[] counts) {
+        List<Integer> foundCodes = new ArrayList<>();
+        for (int code = 0; code < dictionary.length; code++) {
+            if (counts[code] > 0)
+                foundCodes.add(code);
+        }
+        foundCodes.sort((first, second) -> Integer.compare(counts[second], counts[first]));
+
+        Map<String, Integer> valueCounts = new LinkedHashMap<>();
+        for (int code : foundCodes)
+            valueCounts.put(dictionary[code], counts[code]);
+        return valueCounts;
+    }
+
+    /**
+     * Determines the values found of a field with a unique value for every record, ordered by their code,
+     * thus by value. Such values are looked up from the matching rows, rather than counted.
+     *
+     * @param dictionary The distinct values, indexed by their code.
+     * @param codes      The code of the value of every record.
+     * @param rows       The matching rows.
+     * @param size       The number of matching rows.
+     * @return The values found.
+     */
+    private static Set<String> getValues(String[] dictionary, int[] codes, int[] rows, int size) {
+        int[] foundCodes = Arrays.stream(rows, 0, size)
+                .map(row -> codes[row])
+                .filter(code -> code != RecordStore.NULL_CODE)
+                .sorted()
+                .toArray();
+
+        Set<String> values = new LinkedHashSet<>();
+        for (int code : foundCodes)
+            values.add(dictionary[code]);
+        return values;
+    }
+
+    /**
+     * Collects the rows, the counts of the values and the minimum and maximum date for part of the rows.
+     * Fields with a unique value for every record are not counted.
+     */
+    private class Accumulator {
+        private int[] rows = new int[64];
+        private int size = 0;
+        private final int[][] counts = new int[facetCodes.length][];
+        private int minDay = Integer.MAX_VALUE;
+        private int maxDay = Integer.MIN_VALUE;
+
+        /**
+         * Creates an empty accumulator.
+         */
+        private Accumulator() {
+            for (int i = 0; i < facetCodes.length; i++) {
+                if (!unique[i])
+                    counts[i] = new int[dictionaries[i].length];
+            }
+        }
+
+        /**
+         * Collects a matching row.
+         *
+         * @param row The row.
+         */
+        private void accept(int row) {
+            if (size == rows.length)
+                rows = Arrays.copyOf(rows, rows.length * 2);
+            rows[size++] = row;
+
+            for (int i = 0; i < facetCodes.length; i++) {
+                int code = facetCodes[i][row];
+                if ((counts[i] != null) && (code != RecordStore.NULL_CODE))
+                    counts[i][code]++;
+            }
+
+            addDay(fromDays[row]);
+            addDay(toDays[row]);
+        }
+
+        /**
+         * Updates the minimum and maximum date.
+         *
+         * @param day The epoch day of a date.
+         */
+        private void addDay(int day) {
+            if (day != RecordStore.NULL_DATE) {
+                minDay = Math.min(minDay, day);
+                maxDay = Math.max(maxDay, day);
+            }
+        }
+
+        /**
+         * Merges the accumulator of the rows following the rows of this accumulator into this one.
+         *
+         * @param other The other accumulator.
+         */
+        private void merge(Accumulator other) {
+            if (size + other.size > rows.length)
+                rows = Arrays.copyOf(rows, Math.max(rows.length * 2, size + other.size));
+            System.arraycopy(other.rows, 0, rows, size, other.size);
+            size += other.size;
+
+            for (int i = 0; i < counts.length; i++) {
+                for (int code = 0; (counts[i] != null) && (code < counts[i].length); code++)
+                    counts[i][code] += other.counts[i][code];
+            }
+
+            minDay = Math.min(minDay, other.minDay);
+            maxDay = Math.max(maxDay, other.maxDay);
+        }
+    }
+}
@@ -0,0 +1,630 @@
+package org.iish.coins.record;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable plan of a query on the records, compiled once from the request parameters: all criteria are parsed
+ * and validated up front, so that executing the plan only involves index lookups and comparisons.
+ */
+public class QueryPlan {
+    private static final int BLOCK_SIZE = 4096;
+
+    private final PeriodCondition period;
+    private final List<StringCondition> stringConditions;
+    private final List<NumberCondition> numberConditions;
+    private final String key;
+
+    /**
+     * Creates a plan.
+     *
+     * @param period           The condition on the period of the records, or null.
+     * @param stringConditions The conditions on string columns.
+     * @param numberConditions The conditions on decimal columns.
+     */
+    private QueryPlan(PeriodCondition period, List<StringCondition> stringConditions,
+                      List<NumberCondition> numberConditions) {
+        this.period = period;
+        this.stringConditions = Collections.unmodifiableList(stringConditions);
+        this.numberConditions = Collections.unmodifiableList(numberConditions);
+
+        // Conditions and the criteria within a condition may be given in any order, and may be repeated
+        Set<String> keys = new TreeSet<>();
+        if (period != null)
+            keys.add(period.getKey());
+        stringConditions.forEach(condition -> keys.add(condition.getKey()));
+        numberConditions.forEach(condition -> keys.add(condition.getKey()));
+        this.key = String.join("&", keys);
+    }
+
+    /**
+     * Compiles the given request parameters into a plan. The years are given by the parameters 'from' and 'to',
+     * with 'years' set to 'complete' if the records have to lie completely within the years. Criteria on
+     * a column are given by the name of the column (optionally followed by '[]'), formatted as
+     * 'eq|ne:exact|ctns:value' for string columns and 'eq|ne:min:max' for decimal columns.
+     *
+     * @param params The request parameters with their values.
+     * @return The plan.
+     * @throws IllegalArgumentException When a parameter is malformed.
+     */
+    public static QueryPlan compile(Map<String, String[]> params) {
+        PeriodCondition period = PeriodCondition.compile(
+                getFirst(params, "from"), getFirst(params, "to"), getFirst(params, "years"));
+
+        List<StringCondition> stringConditions = new ArrayList<>();
+        List<NumberCondition> numberConditions = new ArrayList<>();
+        for (Map.Entry<String, String[]> param : params.entrySet()) {
+            String name = param.getKey().endsWith("[]")
+                    ? param.getKey().substring(0, param.getKey().length() - 2) : param.getKey();
+            Column column = Column.forName(name);
+
+            if ((column != null) && (column.getType() == Column.Type.STRING))
+                stringConditions.add(StringCondition.compile(column, param.getValue()));
+            if ((column != null) && (column.getType() == Column.Type.DECIMAL))
+                numberConditions.add(NumberCondition.compile(column, param.getValue()));
+        }
+
+        return new QueryPlan(period, stringConditions, numberConditions);
+    }
+
+    /**
+     * Executes the plan on the given records.
+     *
+     * @param store The records.
+     * @return The matching records, in the order of their rows.
+     */
+    public RecordSelection execute(RecordStore store) {
+        return new RecordSelection(store, getRows(store).toArray());
+    }
+
+    /**
+     * Streams the rows of the records matching the plan. First the string and period conditions are resolved using
+     * the indexes, so only the matching rows are scanned for the number conditions. The rows are streamed in
+     * parallel, in blocks of rows, whether or not they were narrowed down by the indexes.
+     *
+     * @param store The records.
+     * @return The matching rows, in ascending order.
+     */
+    IntStream getRows(RecordStore store) {
+        BitSet candidates = null;
+        for (StringCondition condition : stringConditions)
+            candidates = and(candidates, condition.getRows(store));
+        if (period != null)
+            candidates = and(candidates, period.getRows(store));
+
+        IntStream rowStream = (candidates != null)
+                ? stream(candidates, store.size())
+                : IntStream.range(0, store.size()).parallel();
+
+        for (NumberCondition condition : numberConditions) {
+            long[] unscaled = store.getUnscaledValues(condition.column);
+            rowStream = rowStream.filter(row -> condition.matches(unscaled[row]));
+        }
+
+        return rowStream;
+    }
+
+    /**
+     * Streams the set rows of the given rows in parallel, splitting them into blocks of rows,
+     * as the stream of a BitSet itself hardly splits.
+     *
+     * @param rows The rows.
+     * @param size The number of records.
+     * @return The set rows, in ascending order.
+     */
+    private static IntStream stream(BitSet rows, int size) {
+        return IntStream.range(0, (size + BLOCK_SIZE - 1) / BLOCK_SIZE).parallel().flatMap(block -> {
+            int end = Math.min((block + 1) * BLOCK_SIZE, size);
+            return IntStream.iterate(rows.nextSetBit(block * BLOCK_SIZE),
+                    row -> (row >= 0) && (row < end), row -> rows.nextSetBit(row + 1));
+        });
+    }
+
+    /**
+     * Determines which values of the given string column match this plan, provided that all conditions of the plan
+     * are on the period and on that column being equal to values. Such a plan may be applied to a rollup by
+     * that column, rather than to the records themselves.
+     *
+     * @param store  The records.
+     * @param column The string column.
+     * @return For each code, whether the value matches, followed by whether a missing value matches;
+     * or null if the plan has other conditions.
+     */
+    boolean[] getMatchingCodes(RecordStore store, Column column) {
+        if (!numberConditions.isEmpty())
+            return null;
+
+        int nullCode = store.getDictionary(column).length;
+        boolean[] codes = new boolean[nullCode + 1];
+        Arrays.fill(codes, true);
+        for (StringCondition condition : stringConditions) {
+            boolean[] matches = condition.getMatchingCodes(store, column);
+            if (matches == null)
+                return null;
+            for (int code = 0; code < codes.length; code++)
+                codes[code] &= matches[code];
+        }
+        return codes;
+    }
+
+    /**
+     * Determines whether all periods within the given bounds match the condition on the period of this plan,
+     * if there is any. Periods which cannot be shown to match this way might still match.
+     *
+     * @param minFromDay The epoch day of the earliest start of the periods.
+     * @param maxFromDay The epoch day of the latest start of the periods.
+     * @param minToDay   The epoch day of the earliest end of the periods.
+     * @param maxToDay   The epoch day of the latest end of the periods.
+     * @return Whether all periods match.
+     */
+    boolean matchesPeriodOfAll(int minFromDay, int maxFromDay, int minToDay, int maxToDay) {
+        return (period == null) || period.matchesAll(minFromDay, maxFromDay, minToDay, maxToDay);
+    }
+
+    /**
+     * Returns the normalized query: plans matching the same records on the same record store have the same key.
+     *
+     * @return The normalized query.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("QueryPlan");
+        if (period != null)
+            sb.append("\n  ").append(period);
+        for (StringCondition condition : stringConditions)
+            sb.append("\n  ").append(condition);
+        for (NumberCondition condition : numberConditions)
+            sb.append("\n  ").append(condition);
+        if ((period == null) && stringConditions.isEmpty() && numberConditions.isEmpty())
+            sb.append("\n  all records");
+        return sb.toString();
+    }
+
+    /**
+     * Intersects the given bitmaps of rows.
+     *
+     * @param candidates The candidate rows so far, or null if there are no conditions yet.
+     * @param rows       The rows matching another condition.
+     * @return The intersection.
+     */
+    private static BitSet and(BitSet candidates, BitSet rows) {
+        if (candidates == null)
+            return rows;
+        candidates.and(rows);
+        return candidates;
+    }
+
+    /**
+     * Returns the first value of the given request parameter.
+     *
+     * @param params The request parameters with their values.
+     * @param name   The name of the parameter.
+     * @return The first value, or null if missing.
+     */
+    private static String getFirst(Map<String, String[]> params, String name) {
+        String[] values = params.get(name);
+        return ((values != null) && (values.length > 0)) ? values[0] : null;
+    }
+
+    /**
+     * Splits a criterion in its three parts, of which the first determines whether the criterion is negated.
+     *
+     * @param column    The column of the criterion.
+     * @param criterion The criterion.
+     * @return The three parts.
+     * @throws IllegalArgumentException When the criterion is malformed.
+     */
+    private static String[] split(Column column, String criterion) {
+        String[] criterionSplit = criterion.split(":", 3);
+        if ((criterionSplit.length != 3) || !(criterionSplit[0].equals("eq") || criterionSplit[0].equals("ne")))
+            throw new IllegalArgumentException("Invalid criterion '" + criterion + "' for " + column.getName());
+        return criterionSplit;
+    }
+
+    /**
+     * Condition on the period of the records.
+     */
+    private static class PeriodCondition {
+        private final int fromDay;
+        private final int toDay;
+        private final boolean complete;
+
+        /**
+         * Creates a condition on the period of the records.
+         *
+         * @param fromDay  The epoch day of the start of the first year.
+         * @param toDay    The epoch day of the end of the last year.
+         * @param complete Whether the records have to lie completely within the years.
+         */
+        private PeriodCondition(int fromDay, int toDay, boolean complete) {
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+            this.complete = complete;
+        }
+
+        /**
+         * Compiles the condition on the period of the records.
+         *
+         * @param from  The first year.
+         * @param to    The last year.
+         * @param years How to determine which periods are valid.
+         * @return The condition, or null if there is no (non-empty) range of years.
+         * @throws IllegalArgumentException When a year is malformed.
+         */
+        private static PeriodCondition compile(String from, String to, String years) {
+            if ((from == null) || (to == null))
+                return null;
+
+            LocalDate fromDate = getDate(from, true);
+            LocalDate toDate = getDate(to, false);
+            if (!fromDate.isBefore(toDate))
+                return null;
+
+            return new PeriodCondition((int) fromDate.toEpochDay(), (int) toDate.toEpochDay(),
+                    (years != null) && years.equalsIgnoreCase("complete"));
+        }
+
+        /**
+         * For a given year, obtain the LocalDate representation. As the search form accepts any number as a year,
+         * the fraction of the year is ignored.
+         *
+         * @param year  The year in question.
+         * @param start Whether it should be a date from the start, or the end of the year.
+         * @return The LocalDate.
+         * @throws IllegalArgumentException When the year is malformed.
+         */
+        private static LocalDate getDate(String year, boolean start) {
+            try {
+                double number = Double.parseDouble(year);
+                if (!Double.isFinite(number))
+                    throw new NumberFormatException();
+                return start ? LocalDate.of((int) number, 1, 1) : LocalDate.of((int) number, 12, 31);
+            }
+            catch (NumberFormatException | DateTimeException ex) {
+                throw new IllegalArgumentException("Invalid year '" + year + "'");
+            }
+        }
+
+        /**
+         * Determines the rows of the records matching this condition using the interval index.
+         *
+         * @param store The records.
+         * @return A bitmap of the matching rows.
+         */
+        private BitSet getRows(RecordStore store) {
+            return complete
+                    ? store.getPeriodIndex().getRowsWithin(fromDay, toDay)
+                    : store.getPeriodIndex().getRowsStartingOrEndingWithin(fromDay, toDay);
+        }
+
+        /**
+         * Determines whether all periods within the given bounds match this condition, comparing in the same way
+         * as the interval index does: either all periods start or all periods end within the range.
+         *
+         * @param minFromDay The epoch day of the earliest start of the periods.
+         * @param maxFromDay The epoch day of the latest start of the periods.
+         * @param minToDay   The epoch day of the earliest end of the periods.
+         * @param maxToDay   The epoch day of the latest end of the periods.
+         * @return Whether all periods match.
+         */
+        private boolean matchesAll(int minFromDay, int maxFromDay, int minToDay, int maxToDay) {
+            if (complete)
+                return (minFromDay > fromDay) && (maxToDay < toDay);
+            return ((minFromDay > fromDay) && (maxFromDay < toDay)) || ((minToDay > fromDay) && (maxToDay < toDay));
+        }
+
+        /**
+         * Returns the normalized condition.
+         *
+         * @return The normalized condition.
+         */
+        private String getKey() {
+            return "period=" + fromDay + ":" + toDay + (complete ? ":complete" : "");
+        }
+
+        @Override
+        public String toString() {
+            return "period " + (complete ? "within" : "starting or ending within")
+                    + " (" + LocalDate.ofEpochDay(fromDay) + ", " + LocalDate.ofEpochDay(toDay) + ")";
+        }
+    }
+
+    /**
+     * Condition on a string column: a record matches if it matches any of the criteria.
+     */
+    private static class StringCondition {
+        private final Column column;
+        private final List<StringCriterion> criteria;
+
+        /**
+         * Creates a condition on a string column.
+         *
+         * @param column   The string column.
+         * @param criteria The criteria.
+         */
+        private StringCondition(Column column, List<StringCriterion> criteria) {
+            this.column = column;
+            this.criteria = Collections.unmodifiableList(criteria);
+        }
+
+        /**
+         * Compiles the condition on a string column.
+         *
+         * @param column   The string column.
+         * @param criteria The criteria.
+         * @return The condition.
+         * @throws IllegalArgumentException When a criterion is malformed.
+         */
+        private static StringCondition compile(Column column, String[] criteria) {
+            List<StringCriterion> stringCriteria = new ArrayList<>();
+            for (String criterion : criteria) {
+                String[] criterionSplit = split(column, criterion);
+                if (!(criterionSplit[1].equals("exact") || criterionSplit[1].equals("ctns")))
+                    throw new IllegalArgumentException("Invalid criterion '" + criterion + "' for " + column.getName());
+
+                stringCriteria.add(new StringCriterion(criterionSplit[0].equals("ne"),
+                        criterionSplit[1].equals("ctns"), criterionSplit[2]));
+            }
+            return new StringCondition(column, stringCriteria);
+        }
+
+        /**
+         * Determines the rows of the records matching this condition using the inverted index of the column,
+         * and the trigram index of its dictionary for criteria on containing a value.
+         * Negated criteria match the complement of the matching rows.
+         *
+         * @param store The records.
+         * @return A bitmap of the matching rows.
+         */
+        private BitSet getRows(RecordStore store) {
+            InvertedIndex index = store.getIndex(column);
+            BitSet rows = new BitSet(store.size());
+
+            for (StringCriterion criterion : criteria) {
+                BitSet matches = criterion.contains
+                        ? index.getRows(store.getTrigramIndex(column).getCodesContaining(criterion.value))
+                        : index.getRowsEqualIgnoreCase(criterion.value);
+
+                if (criterion.negative)
+                    matches.flip(0, store.size());
+                rows.or(matches);
+            }
+
+            return rows;
+        }
+
+        /**
+         * Determines which values of the given column match this condition, in the same way as
+         * {@link #getRows(RecordStore)} determines the matching rows.
+         *
+         * @param store  The records.
+         * @param column The string column.
+         * @return For each code, whether the value matches, followed by whether a missing value matches;
+         * or null if the condition is on another column or on containing a value.
+         */
+        private boolean[] getMatchingCodes(RecordStore store, Column column) {
+            if (this.column != column)
+                return null;
+
+            InvertedIndex index = store.getIndex(column);
+            boolean[] codes = new boolean[store.getDictionary(column).length + 1];
+            for (StringCriterion criterion : criteria) {
+                if (criterion.contains)
+                    return null;
+
+                boolean[] matches = new boolean[codes.length];
+                for (int code : index.getCodesEqualIgnoreCase(criterion.value))
+                    matches[code] = true;
+
+                for (int code = 0; code < codes.length; code++)
+                    codes[code] |= (matches[code] != criterion.negative);
+            }
+            return codes;
+        }
+
+        /**
+         * Returns the normalized condition.
+         *
+         * @return The normalized condition.
+         */
+        private String getKey() {
+            return column.getName() + "=" + criteria.stream()
+                    .map(StringCriterion::getKey).sorted().distinct().collect(Collectors.joining("|"));
+        }
+
+        @Override
+        public String toString() {
+            return column.getName() + " matches any of "
+                    + criteria.stream().map(StringCriterion::toString).collect(Collectors.joining(", ", "[", "]"));
+        }
+    }
+
+    /**
+     * Criterion on a string column, with the value to match already in lower case or case-folded.
+     */
+    private static class StringCriterion {
+        private final boolean negative;
+        private final boolean contains;
+        private final String value;
+
+        /**
+         * Creates a criterion on a string column.
+         *
+         * @param negative Whether the criterion is negated.
+         * @param contains Whether values have to contain the given value, rather than equal it (ignoring case).
+         * @param value    The value to match.
+         */
+        private StringCriterion(boolean negative, boolean contains, String value) {
+            this.negative = negative;
+            this.contains = contains;
+            this.value = contains ? value.toLowerCase() : InvertedIndex.fold(value);
+        }
+
+        /**
+         * Returns the normalized criterion; the length of the value is included so that keys are unambiguous.
+         *
+         * @return The normalized criterion.
+         */
+        private String getKey() {
+            return (negative ? "ne" : "eq") + ":" + (contains ? "ctns" : "exact") + ":" + value.length() + ":" + value;
+        }
+
+        @Override
+        public String toString() {
+            return (negative ? "not " : "") + (contains ? "containing '" : "equal to '") + value + "'";
+        }
+    }
+
+    /**
+     * Condition on a decimal column: a record matches if it matches any of the criteria.
+     */
+    private static class NumberCondition {
+        private final Column column;
+        private final NumberCriterion[] criteria;
+
+        /**
+         * Creates a condition on a decimal column.
+         *
+         * @param column   The decimal column.
+         * @param criteria The criteria.
+         */
+        private NumberCondition(Column column, NumberCriterion[] criteria) {
+            this.column = column;
+            this.criteria = criteria;
+        }
+
+        /**
+         * Compiles the condition on a decimal column.
+         *
+         * @param column   The decimal column.
+         * @param criteria The criteria.
+         * @return The condition.
+         * @throws IllegalArgumentException When a criterion is malformed.
+         */
+        private static NumberCondition compile(Column column, String[] criteria) {
+            NumberCriterion[] numberCriteria = new NumberCriterion[criteria.length];
+            for (int i = 0; i < criteria.length; i++) {
+                String[] criterionSplit = split(column, criteria[i]);
+                try {
+                    numberCriteria[i] = new NumberCriterion(criterionSplit[0].equals("ne"),
+                            new BigDecimal(criterionSplit[1]), new BigDecimal(criterionSplit[2]), column.getScale());
+                }
+                catch (NumberFormatException | ArithmeticException e) {
+                    throw new IllegalArgumentException("Invalid criterion '" + criteria[i] + "' for " + column.getName());
+                }
+            }
+            return new NumberCondition(column, numberCriteria);
+        }
+
+        /**
+         * Determines whether the given unscaled value matches this condition.
+         *
+         * @param value The unscaled value.
+         * @return Whether the value matches.
+         */
+        private boolean matches(long value) {
+            for (NumberCriterion criterion : criteria) {
+                if (criterion.matches(value) != criterion.negative)
+                    return true;
+            }
+            return false;
+        }
+
+        /**
+         * Returns the normalized condition.
+         *
+         * @return The normalized condition.
+         */
+        private String getKey() {
+            return column.getName() + "=" + Arrays.stream(criteria)
+                    .map(NumberCriterion::getKey).sorted().distinct().collect(Collectors.joining("|"));
+        }
+
+        @Override
+        public String toString() {
+            return column.getName() + " matches any of " + Arrays.stream(criteria)
+                    .map(criterion -> criterion.toString(column.getScale()))
+                    .collect(Collectors.joining(", ", "[", "]"));
+        }
+    }
+
+    /**
+     * A number criterion with its bounds converted to unscaled values of a decimal column. The lower bound is
+     * rounded up and the upper bound is rounded down, so that comparing unscaled values gives the same result
+     * as comparing the decimals.
+     */
+    private static class NumberCriterion {
+        private static final BigInteger MIN_UNSCALED = BigInteger.valueOf(RecordStore.NULL_DECIMAL + 1);
+        private static final BigInteger MAX_UNSCALED = BigInteger.valueOf(Long.MAX_VALUE);
+
+        private final boolean negative;
+        private final long min;
+        private final long max;
+
+        /**
+         * Creates a number criterion.
+         *
+         * @param negative Whether the criterion is negated.
+         * @param min      The lower bound.
+         * @param max      The upper bound.
+         * @param scale    The scale of the decimal column.
+         */
+        private NumberCriterion(boolean negative, BigDecimal min, BigDecimal max, int scale) {
+            this.negative = negative;
+
+            BigInteger minUnscaled = min.setScale(scale, RoundingMode.CEILING).unscaledValue();
+            BigInteger maxUnscaled = max.setScale(scale, RoundingMode.FLOOR).unscaledValue();
+
+            // Values never equal the null sentinel, so bounds outside of the range of values can be clamped
+            if ((minUnscaled.compareTo(MAX_UNSCALED) <= 0) && (maxUnscaled.compareTo(MIN_UNSCALED) >= 0)) {
+                this.min = minUnscaled.max(MIN_UNSCALED).longValue();
+                this.max = maxUnscaled.min(MAX_UNSCALED).longValue();
+            }
+            else {
+                this.min = 1;
+                this.max = 0;
+            }
+        }
+
+        /**
+         * Determines whether the given unscaled value is within the bounds.
+         *
+         * @param value The unscaled value.
+         * @return Whether the value matches.
+         */
+        private boolean matches(long value) {
+            return (value != RecordStore.NULL_DECIMAL) && (min <= value) && (value <= max);
+        }
+
+        /**
+         * Returns the normalized criterion; all empty ranges are the same.
+         *
+         * @return The normalized criterion.
+         */
+        private String getKey() {
+            return (negative ? "ne" : "eq") + ":" + ((min <= max) ? min + ":" + max : "none");
+        }
+
+        /**
+         * Describes the criterion.
+         *
+         * @param scale The scale of the decimal column.
+         * @return The description.
+         */
+        private String toString(int scale) {
+            String range = (min <= max)
+                    ? "[" + BigDecimal.valueOf(min, scale) + ", " + BigDecimal.valueOf(max, scale) + "]" : "none";
+            return (negative ? "not in " : "in ") + range;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.iish.coins.record;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable sort order of records on one or more columns. Records are compared on the primitive values in the
+ * record store: the codes of string columns (the dictionaries are sorted, so codes are ordered by value),
+ * the epoch days of date columns and the unscaled values of decimal columns. Records without a value come first
+ * in ascending order; equal records remain in the order of their rows.
+ */
+public class RecordOrder {
+    private final Column[] columns;
+    private final boolean[] descending;
+
+    /**
+     * Creates a sort order.
+     *
+     * @param columns    The columns to sort on, in order of precedence.
+     * @param descending For each column, whether to sort in descending order.
+     */
+    public RecordOrder(Column[] columns, boolean[] descending) {
+        if (columns.length != descending.length)
+            throw new IllegalArgumentException("Every column needs a direction to sort in");
+        this.columns = columns.clone();
+        this.descending = descending.clone();
+    }
+
+    /**
+     * Parses a sort order: a comma separated list of column names, each prefixed by '-' to sort in descending order.
+     *
+     * @param sort The sort order, or null.
+     * @return The sort order, or null if not given.
+     * @throws IllegalArgumentException When a column is unknown.
+     */
+    public static RecordOrder parse(String sort) {
+        if ((sort == null) || sort.trim().isEmpty())
+            return null;
+
+        List<Column> columns = new ArrayList<>();
+        List<Boolean> descending = new ArrayList<>();
+        for (String key : sort.split(",")) {
+            String name = key.trim();
+            boolean desc = name.startsWith("-");
+            Column column = Column.forName(desc ? name.substring(1) : name);
+            if (column == null)
+                throw new IllegalArgumentException("Cannot sort on unknown field '" + name + "'");
+
+            columns.add(column);
+            descending.add(desc);
+        }
+
+        boolean[] directions = new boolean[descending.size()];
+        for (int i = 0; i < directions.length; i++)
+            directions[i] = descending.get(i);
+        return new RecordOrder(columns.toArray(new Column[0]), directions);
+    }
+
+    /**
+     * Sorts the given records, but only as far as needed to obtain the first records: a partial sort using a bounded
+     * heap, which takes O(n log k) time for the first k of n records.
+     *
+     * @param records The records.
+     * @param count   The number of records to obtain.
+     * @return The first records in this order.
+     */
+    public RecordSelection getFirst(RecordSelection records, int count) {
+        Comparator comparator = new Comparator(records.getStore());
+        int k = Math.max(0, Math.min(count, records.size()));
+
+        // Keep the first k records seen so far in a heap with the last of them on top
+        int[] heap = new int[k];
+        int size = 0;
+        for (int i = 0; (k > 0) && (i < records.size()); i++) {
+            int row = records.getRow(i);
+            if (size < k) {
+                heap[size] = row;
+                siftUp(heap, size++, comparator);
+            }
+            else if (comparator.compare(row, heap[0]) < 0) {
+                heap[0] = row;
+                siftDown(heap, 0, k, comparator);
+            }
+        }
+
+        // Repeatedly move the last record to the end of the heap
+        for (int end = k - 1; end > 0; end--) {
+            int last = heap[0];
+            heap[0] = heap[end];
+            heap[end] = last;
+            siftDown(heap, 0, end, comparator);
+        }
+
+        return records.withRows(heap);
+    }
+
+    /**
+     * Moves the record at the given position up the heap, until its parent comes after it.
+     *
+     * @param heap       The heap of rows.
+     * @param position   The position of the record.
+     * @param comparator The comparator of the rows.
+     */
+    private static void siftUp(int[] heap, int position, Comparator comparator) {
+        int row = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (comparator.compare(heap[parent], row) >= 0)
+                break;
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = row;
+    }
+
+    /**
+     * Moves the record at the given position down the heap, until its children come before it.
+     *
+     * @param heap       The heap of rows.
+     * @param position   The position of the record.
+     * @param size       The size of the heap.
+     * @param comparator The comparator of the rows.
+     */
+    private static void siftDown(int[] heap, int position, int size, Comparator comparator) {
+        int row = heap[position];
+        while (2 * position + 1 < size) {
+            int child = 2 * position + 1;
+            if ((child + 1 < size) && (comparator.compare(heap[child + 1], heap[child]) > 0))
+                child++;
+            if (comparator.compare(row, heap[child]) >= 0)
+                break;
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = row;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++)
+            sb.append((i > 0) ? "," : "").append(descending[i] ? "-" : "").append(columns[i].getName());
+        return sb.toString();
+    }
+
+    /**
+     * Compares rows of a record store in this order.
+     */
+    private class Comparator {
+        private final int[][] intValues = new int[columns.length][];
+        private final long[][] longValues = new long[columns.length][];
+
+        /**
+         * Resolves the columns to sort on in the given record store.
+         *
+         * @param store The record store.
+         */
+        private Comparator(RecordStore store) {
+            for (int i = 0; i < columns.length; i++) {
+                switch (columns[i].getType()) {
+                    case STRING:
+                        intValues[i] = store.getCodes(columns[i]);
+                        break;
+                    case DATE:
+                        intValues[i] = store.getEpochDays(columns[i]);
+                        break;
+                    case DECIMAL:
+                        longValues[i] = store.getUnscaledValues(columns[i]);
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Compares two rows.
+         *
+         * @param first  The first row.
+         * @param second The second row.
+         * @return A negative number, zero or a positive number if the first row comes before, is the same as,
+         * or comes after the second row.
+         */
+        private int compare(int first, int second) {
+            for (int i = 0; i < columns.length; i++) {
+                int result = (intValues[i] != null)
+                        ? Integer.compare(intValues[i][first], intValues[i][second])
+                        : Long.compare(longValues[i][first], longValues[i][second]);
+                if (result != 0)
+                    return descending[i] ? -result : result;
+            }
+            return Integer.compare(first, second);
+        }
+    }
+}
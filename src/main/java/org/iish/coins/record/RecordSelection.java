@@ -0,0 +1,120 @@
+package org.iish.coins.record;
+
+import com.google.gson.annotations.JsonAdapter;
+
+import java.util.Arrays;
+
+/**
+ * A selection of records from a record store, in the order of their rows unless sorted,
+ * with the columns to write of each record.
+ */
+@JsonAdapter(RecordSelectionAdapter.class)
+public class RecordSelection {
+    private final RecordStore store;
+    private final int[] rows;
+    private final Column[] columns;
+    private final boolean withTotalDays;
+
+    /**
+     * Creates a selection of records with all columns.
+     *
+     * @param store The record store.
+     * @param rows  The rows of the selected records.
+     */
+    public RecordSelection(RecordStore store, int[] rows) {
+        this(store, rows, Column.values(), true);
+    }
+
+    /**
+     * Creates a selection of records.
+     *
+     * @param store         The record store.
+     * @param rows          The rows of the selected records.
+     * @param columns       The columns to write of each record.
+     * @param withTotalDays Whether to write the total number of days of each record.
+     */
+    private RecordSelection(RecordStore store, int[] rows, Column[] columns, boolean withTotalDays) {
+        this.store = store;
+        this.rows = rows;
+        this.columns = columns;
+        this.withTotalDays = withTotalDays;
+    }
+
+    /**
+     * Returns the same selection with other rows.
+     *
+     * @param rows The rows of the selected records.
+     * @return The selection.
+     */
+    RecordSelection withRows(int[] rows) {
+        return new RecordSelection(store, rows, columns, withTotalDays);
+    }
+
+    /**
+     * Returns the records from the given position up to the other position.
+     *
+     * @param from The position of the first record (inclusive).
+     * @param to   The position of the last record (exclusive).
+     * @return The selection.
+     */
+    public RecordSelection slice(int from, int to) {
+        return withRows(Arrays.copyOfRange(rows, from, to));
+    }
+
+    /**
+     * Returns the same records, with only the given columns.
+     *
+     * @param columns       The columns to write of each record.
+     * @param withTotalDays Whether to write the total number of days of each record.
+     * @return The selection.
+     */
+    public RecordSelection project(Column[] columns, boolean withTotalDays) {
+        return new RecordSelection(store, rows, columns.clone(), withTotalDays);
+    }
+
+    /**
+     * Returns the record store the records are selected from.
+     *
+     * @return The record store.
+     */
+    public RecordStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the number of selected records.
+     *
+     * @return The number of selected records.
+     */
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Returns the row of the selected record at the given position.
+     *
+     * @param index The position in the selection.
+     * @return The row in the record store.
+     */
+    public int getRow(int index) {
+        return rows[index];
+    }
+
+    /**
+     * Returns the columns to write of each record.
+     *
+     * @return The columns.
+     */
+    public Column[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * Returns whether to write the total number of days of each record.
+     *
+     * @return True if the total number of days are written.
+     */
+    public boolean isWithTotalDays() {
+        return withTotalDays;
+    }
+}
@@ -0,0 +1,86 @@
+package org.iish.coins.record;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Writes a selection of records as a JSON array of record objects, directly from the columns of the record store.
+ */
+public class RecordSelectionAdapter extends TypeAdapter<RecordSelection> {
+
+    @Override
+    public void write(JsonWriter out, RecordSelection selection) throws IOException {
+        if (selection == null) {
+            out.nullValue();
+            return;
+        }
+
+        RecordStore store = selection.getStore();
+        Column[] columns = selection.getColumns();
+        out.beginArray();
+        for (int i = 0; i < selection.size(); i++)
+            writeRecord(out, store, selection.getRow(i), columns, selection.isWithTotalDays());
+        out.endArray();
+    }
+
+    /**
+     * Records are never read from JSON: a selection only holds the rows of records in a record store, which
+     * is loaded from the Dataverse CSV and not from JSON. This adapter is a TypeAdapter rather than
+     * a serializer only, so the records are streamed to the writer instead of building a JSON tree first.
+     *
+     * @param in The JSON reader.
+     * @return Nothing.
+     * @throws UnsupportedOperationException Always.
+     */
+    @Override
+    public RecordSelection read(JsonReader in) {
+        throw new UnsupportedOperationException("Records cannot be read from JSON");
+    }
+
+    /**
+     * Writes a single record; columns without a value are left out.
+     *
+     * @param out           The JSON writer.
+     * @param store         The record store.
+     * @param row           The row of the record.
+     * @param columns       The columns to write.
+     * @param withTotalDays Whether to write the total number of days.
+     * @throws IOException When I/O problems occur.
+     */
+    private static void writeRecord(JsonWriter out, RecordStore store, int row, Column[] columns,
+                                    boolean withTotalDays) throws IOException {
+        out.beginObject();
+
+        for (Column column : columns) {
+            switch (column.getType()) {
+                case STRING:
+                    String value = store.getString(column, row);
+                    if (value != null)
+                        out.name(column.getName()).value(value);
+                    break;
+                case DATE:
+                    LocalDate date = store.getDate(column, row);
+                    if (date != null) {
+                        out.name(column.getName()).beginObject()
+                                .name("year").value(date.getYear())
+                                .name("month").value(date.getMonthValue())
+                                .name("day").value(date.getDayOfMonth())
+                                .endObject();
+                    }
+                    break;
+                case DECIMAL:
+                    if (store.getUnscaled(column, row) != RecordStore.NULL_DECIMAL)
+                        out.name(column.getName()).value(store.getDecimal(column, row));
+                    break;
+            }
+        }
+
+        if (withTotalDays)
+            out.name("totalDays").value(store.getTotalDays(row));
+        out.endObject();
+    }
+}
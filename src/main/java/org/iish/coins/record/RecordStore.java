@@ -0,0 +1,497 @@
+package org.iish.coins.record;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.Year;
+import java.util.*;
+
+/**
+ * Column-oriented store of records. Every column is held in a primitive array: string columns are dictionary
+ * coded as ints, dates are held as epoch days and decimals as unscaled longs with the fixed scale of the column.
+ * A record is identified by its row, the position in the arrays.
+ */
+public class RecordStore {
+    public static final int NULL_CODE = -1;
+    public static final int NULL_DATE = Integer.MIN_VALUE;
+    public static final long NULL_DECIMAL = Long.MIN_VALUE;
+
+    private static final Column[] COLUMNS = Column.values();
+
+    public static final RecordStore EMPTY = new Builder().build();
+
+    private final int size;
+    private final int[][] codes;
+    private final String[][] dictionaries;
+    private final int[][] epochDays;
+    private final long[][] unscaled;
+    private final InvertedIndex[] indexes;
+    private final TrigramIndex[] trigramIndexes;
+    private final IntervalIndex periodIndex;
+
+    /**
+     * Creates a store from the given columns. All arrays are indexed by the ordinal of the column
+     * and are null for columns of another type. The string columns and the periods are indexed right away.
+     *
+     * @param size         The number of records.
+     * @param codes        The dictionary codes of the string columns.
+     * @param dictionaries The dictionaries of the string columns, with the value for each code.
+     * @param epochDays    The epoch days of the date columns.
+     * @param unscaled     The unscaled values of the decimal columns.
+     */
+    public RecordStore(int size, int[][] codes, String[][] dictionaries, int[][] epochDays, long[][] unscaled) {
+        this.size = size;
+        this.codes = codes;
+        this.dictionaries = dictionaries;
+        this.epochDays = epochDays;
+        this.unscaled = unscaled;
+
+        this.indexes = new InvertedIndex[COLUMNS.length];
+        this.trigramIndexes = new TrigramIndex[COLUMNS.length];
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (codes[i] != null) {
+                indexes[i] = new InvertedIndex(codes[i], dictionaries[i]);
+                trigramIndexes[i] = new TrigramIndex(dictionaries[i]);
+            }
+        }
+        this.periodIndex = new IntervalIndex(epochDays[Column.DATE_FROM.ordinal()], epochDays[Column.DATE_TO.ordinal()]);
+    }
+
+    /**
+     * Returns the number of records.
+     *
+     * @return The number of records.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the dictionary code of the value of the given string column.
+     *
+     * @param column The string column.
+     * @param row    The row of the record.
+     * @return The code, or {@link #NULL_CODE} if there is no value.
+     */
+    public int getCode(Column column, int row) {
+        return codes[column.ordinal()][row];
+    }
+
+    /**
+     * Returns the dictionary of the given string column. The returned array must not be modified.
+     *
+     * @param column The string column.
+     * @return The distinct values, indexed by their code.
+     */
+    public String[] getDictionary(Column column) {
+        return dictionaries[column.ordinal()];
+    }
+
+    /**
+     * Returns the inverted index of the given string column.
+     *
+     * @param column The string column.
+     * @return The inverted index.
+     */
+    public InvertedIndex getIndex(Column column) {
+        return indexes[column.ordinal()];
+    }
+
+    /**
+     * Returns the trigram index of the dictionary of the given string column.
+     *
+     * @param column The string column.
+     * @return The trigram index.
+     */
+    public TrigramIndex getTrigramIndex(Column column) {
+        return trigramIndexes[column.ordinal()];
+    }
+
+    /**
+     * Returns the interval index of the periods of the records, from the start date up to the end date.
+     *
+     * @return The interval index.
+     */
+    public IntervalIndex getPeriodIndex() {
+        return periodIndex;
+    }
+
+    /**
+     * Returns the value of the given string column.
+     *
+     * @param column The string column.
+     * @param row    The row of the record.
+     * @return The value, or null.
+     */
+    public String getString(Column column, int row) {
+        int code = codes[column.ordinal()][row];
+        return (code != NULL_CODE) ? dictionaries[column.ordinal()][code] : null;
+    }
+
+    /**
+     * Returns the value of the given date column as an epoch day.
+     *
+     * @param column The date column.
+     * @param row    The row of the record.
+     * @return The epoch day, or {@link #NULL_DATE} if there is no value.
+     */
+    public int getEpochDay(Column column, int row) {
+        return epochDays[column.ordinal()][row];
+    }
+
+    /**
+     * Returns the value of the given date column.
+     *
+     * @param column The date column.
+     * @param row    The row of the record.
+     * @return The date, or null.
+     */
+    public LocalDate getDate(Column column, int row) {
+        int epochDay = epochDays[column.ordinal()][row];
+        return (epochDay != NULL_DATE) ? LocalDate.ofEpochDay(epochDay) : null;
+    }
+
+    /**
+     * Returns the unscaled value of the given decimal column.
+     *
+     * @param column The decimal column.
+     * @param row    The row of the record.
+     * @return The unscaled value, or {@link #NULL_DECIMAL} if there is no value.
+     */
+    public long getUnscaled(Column column, int row) {
+        return unscaled[column.ordinal()][row];
+    }
+
+    /**
+     * Returns the value of the given decimal column.
+     *
+     * @param column The decimal column.
+     * @param row    The row of the record.
+     * @return The value, or null.
+     */
+    public BigDecimal getDecimal(Column column, int row) {
+        return toDecimal(unscaled[column.ordinal()][row], column.getScale());
+    }
+
+    /**
+     * Replaces the value of the given decimal column; only used while post-processing a newly built store.
+     *
+     * @param column The decimal column.
+     * @param row    The row of the record.
+     * @param value  The new value, or null.
+     */
+    void setDecimal(Column column, int row, BigDecimal value) {
+        unscaled[column.ordinal()][row] = toUnscaled(value, column.getScale());
+    }
+
+    /**
+     * Returns the number of days the record covers, from the start date up to and including the end date.
+     *
+     * @param row The row of the record.
+     * @return The number of days, or 0 if a date is missing.
+     */
+    public long getTotalDays(int row) {
+        int from = epochDays[Column.DATE_FROM.ordinal()][row];
+        int to = epochDays[Column.DATE_TO.ordinal()][row];
+        if ((from == NULL_DATE) || (to == NULL_DATE))
+            return 0;
+        return (long) to - from + 1;
+    }
+
+    /**
+     * Returns the number of days the record covers in the given year.
+     *
+     * @param row  The row of the record.
+     * @param year The year.
+     * @return The number of days, or 0 if a date is missing.
+     */
+    public long getTotalDaysInYear(int row, int year) {
+        int from = epochDays[Column.DATE_FROM.ordinal()][row];
+        int to = epochDays[Column.DATE_TO.ordinal()][row];
+        if ((from == NULL_DATE) || (to == NULL_DATE))
+            return 0;
+        return getDaysInYear(from, to, year);
+    }
+
+    /**
+     * Returns the year of the value of the given date column.
+     *
+     * @param column The date column.
+     * @param row    The row of the record.
+     * @return The year, or null if there is no value.
+     */
+    public Integer getYear(Column column, int row) {
+        int epochDay = epochDays[column.ordinal()][row];
+        return (epochDay != NULL_DATE) ? LocalDate.ofEpochDay(epochDay).getYear() : null;
+    }
+
+    /**
+     * Computes the number of days of a period, from the start up to and including the end, that fall in the given
+     * year. Together with the years of the start and the end, this replaces holding the days per year.
+     *
+     * @param fromEpochDay The epoch day of the start of the period.
+     * @param toEpochDay   The epoch day of the end of the period.
+     * @param year         The year.
+     * @return The number of days.
+     */
+    public static long getDaysInYear(int fromEpochDay, int toEpochDay, int year) {
+        long firstDay = LocalDate.ofYearDay(year, 1).toEpochDay();
+        long lastDay = firstDay + Year.of(year).length() - 1;
+        return Math.max(0, Math.min(toEpochDay, lastDay) - Math.max(fromEpochDay, firstDay) + 1);
+    }
+
+    /**
+     * Returns the dictionary codes of the given string column. The returned array must not be modified.
+     *
+     * @param column The string column.
+     * @return The codes, indexed by row.
+     */
+    public int[] getCodes(Column column) {
+        return codes[column.ordinal()];
+    }
+
+    /**
+     * Returns the epoch days of the given date column. The returned array must not be modified.
+     *
+     * @param column The date column.
+     * @return The epoch days, indexed by row.
+     */
+    public int[] getEpochDays(Column column) {
+        return epochDays[column.ordinal()];
+    }
+
+    /**
+     * Returns the unscaled values of the given decimal column. The returned array must not be modified.
+     *
+     * @param column The decimal column.
+     * @return The unscaled values, indexed by row.
+     */
+    public long[] getUnscaledValues(Column column) {
+        return unscaled[column.ordinal()];
+    }
+
+    /**
+     * Returns the statistics of each column: the number of values, the number of distinct values
+     * and an estimate of the memory saved compared to holding an object for every value.
+     *
+     * @return The statistics of each column.
+     */
+    public List<ColumnStatistics> getStatistics() {
+        List<ColumnStatistics> statistics = new ArrayList<>();
+        for (Column column : COLUMNS) {
+            int i = column.ordinal();
+            switch (column.getType()) {
+                case STRING:
+                    statistics.add(ColumnStatistics.forStrings(column, codes[i], dictionaries[i]));
+                    break;
+                case DATE:
+                    statistics.add(ColumnStatistics.forDates(column, epochDays[i]));
+                    break;
+                case DECIMAL:
+                    statistics.add(ColumnStatistics.forDecimals(column, unscaled[i]));
+                    break;
+            }
+        }
+        return statistics;
+    }
+
+    /**
+     * Converts a decimal to an unscaled value with the given scale.
+     *
+     * @param value The decimal, or null.
+     * @param scale The scale.
+     * @return The unscaled value, or {@link #NULL_DECIMAL}.
+     * @throws ArithmeticException When the value does not fit.
+     */
+    public static long toUnscaled(BigDecimal value, int scale) {
+        if (value == null)
+            return NULL_DECIMAL;
+
+        long unscaledValue = value.setScale(scale, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+        if (unscaledValue == NULL_DECIMAL)
+            throw new ArithmeticException("Value out of range: " + value);
+        return unscaledValue;
+    }
+
+    /**
+     * Converts an unscaled value with the given scale to a decimal.
+     *
+     * @param unscaledValue The unscaled value, or {@link #NULL_DECIMAL}.
+     * @param scale         The scale.
+     * @return The decimal, or null.
+     */
+    public static BigDecimal toDecimal(long unscaledValue, int scale) {
+        return (unscaledValue != NULL_DECIMAL) ? BigDecimal.valueOf(unscaledValue, scale) : null;
+    }
+
+    /**
+     * Builds a store row by row.
+     */
+    public static class Builder {
+        private int size = 0;
+        private int capacity = 1024;
+
+        private final int[][] codes = new int[COLUMNS.length][];
+        private final List<Map<String, Integer>> codesByValue =
+                new ArrayList<>(Collections.nCopies(COLUMNS.length, null));
+        private final List<List<String>> dictionaries = new ArrayList<>(Collections.nCopies(COLUMNS.length, null));
+        private final int[][] epochDays = new int[COLUMNS.length][];
+        private final long[][] unscaled = new long[COLUMNS.length][];
+
+        private final Map<String, String> canonicalStrings = new HashMap<>();
+        private final Map<Integer, String[]> links = new HashMap<>();
+
+        /**
+         * Sets up an empty builder.
+         */
+        public Builder() {
+            for (Column column : COLUMNS) {
+                int i = column.ordinal();
+                switch (column.getType()) {
+                    case STRING:
+                        codes[i] = new int[capacity];
+                        codesByValue.set(i, new HashMap<>());
+                        dictionaries.set(i, new ArrayList<>());
+                        break;
+                    case DATE:
+                        epochDays[i] = new int[capacity];
+                        break;
+                    case DECIMAL:
+                        unscaled[i] = new long[capacity];
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Adds a record without any values.
+         *
+         * @return The row of the new record.
+         */
+        public int addRow() {
+            if (size == capacity) {
+                capacity *= 2;
+                for (int i = 0; i < COLUMNS.length; i++) {
+                    if (codes[i] != null)
+                        codes[i] = Arrays.copyOf(codes[i], capacity);
+                    if (epochDays[i] != null)
+                        epochDays[i] = Arrays.copyOf(epochDays[i], capacity);
+                    if (unscaled[i] != null)
+                        unscaled[i] = Arrays.copyOf(unscaled[i], capacity);
+                }
+            }
+
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (codes[i] != null)
+                    codes[i][size] = NULL_CODE;
+                if (epochDays[i] != null)
+                    epochDays[i][size] = NULL_DATE;
+                if (unscaled[i] != null)
+                    unscaled[i][size] = NULL_DECIMAL;
+            }
+
+            return size++;
+        }
+
+        /**
+         * Sets the value of a string column.
+         *
+         * @param column The string column.
+         * @param row    The row of the record.
+         * @param value  The value, or null.
+         */
+        public void setString(Column column, int row, String value) {
+            int i = column.ordinal();
+            if (value == null) {
+                codes[i][row] = NULL_CODE;
+                return;
+            }
+
+            Integer code = codesByValue.get(i).get(value);
+            if (code == null) {
+                // Share a single instance of a value among all columns
+                value = canonicalStrings.computeIfAbsent(value, v -> v);
+                code = dictionaries.get(i).size();
+                codesByValue.get(i).put(value, code);
+                dictionaries.get(i).add(value);
+            }
+            codes[i][row] = code;
+        }
+
+        /**
+         * Sets the value of a date column.
+         *
+         * @param column The date column.
+         * @param row    The row of the record.
+         * @param value  The value, or null.
+         */
+        public void setDate(Column column, int row, LocalDate value) {
+            epochDays[column.ordinal()][row] = (value != null) ? (int) value.toEpochDay() : NULL_DATE;
+        }
+
+        /**
+         * Sets the value of a decimal column.
+         *
+         * @param column The decimal column.
+         * @param row    The row of the record.
+         * @param value  The value, or null.
+         * @throws ArithmeticException When the value does not fit.
+         */
+        public void setDecimal(Column column, int row, BigDecimal value) {
+            unscaled[column.ordinal()][row] = toUnscaled(value, column.getScale());
+        }
+
+        /**
+         * Records the ids of the records the given record links to, to be resolved during post-processing.
+         *
+         * @param row   The row of the record.
+         * @param links The ids of the linked records.
+         */
+        void setLinks(int row, String[] links) {
+            this.links.put(row, links);
+        }
+
+        /**
+         * Returns the ids of the linked records of all records with links.
+         *
+         * @return The ids of the linked records, by row.
+         */
+        Map<Integer, String[]> getLinks() {
+            return links;
+        }
+
+        /**
+         * Builds the store with all added records. The dictionaries are sorted, so that the codes are stable:
+         * the same values always obtain the same codes and the order of the codes is the order of the values.
+         *
+         * @return The store.
+         */
+        public RecordStore build() {
+            int[][] builtCodes = new int[COLUMNS.length][];
+            String[][] builtDictionaries = new String[COLUMNS.length][];
+            int[][] builtEpochDays = new int[COLUMNS.length][];
+            long[][] builtUnscaled = new long[COLUMNS.length][];
+
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (codes[i] != null) {
+                    builtDictionaries[i] = dictionaries.get(i).toArray(new String[0]);
+                    Arrays.sort(builtDictionaries[i]);
+
+                    int[] sortedCodes = new int[builtDictionaries[i].length];
+                    for (int code = 0; code < sortedCodes.length; code++)
+                        sortedCodes[codesByValue.get(i).get(builtDictionaries[i][code])] = code;
+
+                    builtCodes[i] = new int[size];
+                    for (int row = 0; row < size; row++)
+                        builtCodes[i][row] = (codes[i][row] != NULL_CODE) ? sortedCodes[codes[i][row]] : NULL_CODE;
+                }
+                if (epochDays[i] != null)
+                    builtEpochDays[i] = Arrays.copyOf(epochDays[i], size);
+                if (unscaled[i] != null)
+                    builtUnscaled[i] = Arrays.copyOf(unscaled[i], size);
+            }
+
+            return new RecordStore(size, builtCodes, builtDictionaries, builtEpochDays, builtUnscaled);
+        }
+    }
+}
@@ -2,217 +2,270 @@ package org.iish.coins.record;
 
 import org.iish.coins.config.Config;
 import org.iish.coins.dataset.Datasets;
-import org.iish.coins.util.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import spark.Request;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.time.format.DateTimeParseException;
 import java.util.*;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 /**
  * Allows one to filter the records.
  */
 @Singleton
 public class RecordsFilter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RecordsFilter.class);
+
     private @Inject Config config;
     private @Inject Datasets datasets;
 
     /**
-     * For the given request, filter the list of records.
+     * For the given request, filter the records.
      *
      * @param request The request with filters set.
      * @return The filtered records.
+     * @throws IllegalArgumentException When the filters are malformed.
      */
-    public List<Record> getRecords(Request request) {
-        Stream<Record> recordStream = datasets.getCsv().parallelStream();
-
-        String years = request.queryParams("years");
-        LocalDate from = getDate(request.queryParams("from"), true);
-        LocalDate to = getDate(request.queryParams("to"), false);
-        if ((from != null) && (to != null) && from.isBefore(to)) {
-            recordStream = recordStream.filter(record -> filterOnDate(record, from, to, years));
-        }
+    public RecordSelection getRecords(Request request) {
+        return getRecordsHolder(request).getRecords();
+    }
+
+    /**
+     * For the given request, filter the records and determine the values found and the minimum and maximum year.
+     * The number of records with each value is only returned if asked for, for the most frequent values
+     * ('facetLimit'). Optionally, the records are sorted ('sort'), paged ('offset' and 'limit') and projected on
+     * the given fields ('fields', which may include 'totalDays'); if paged, the holder also holds the total number
+     * of filtered records.
+     *
+     * @param request The request with filters set.
+     * @return The filtered records with their values and years.
+     * @throws IllegalArgumentException When the filters are malformed.
+     */
+    public RecordsHolder getRecordsHolder(Request request) {
+        Integer facetLimit = getNumber("facetLimit", request.queryParams("facetLimit"), 1);
+        Integer offset = getNumber("offset", request.queryParams("offset"), 0);
+        Integer limit = getNumber("limit", request.queryParams("limit"), 0);
+        RecordOrder order = RecordOrder.parse(request.queryParams("sort"));
+        String fields = request.queryParams("fields");
+
+        RecordsHolder holder = getFilteredRecords(request);
+        holder = (facetLimit != null) ? holder.withFacetLimit(facetLimit) : holder.withoutValueCounts();
+        if ((offset == null) && (limit == null) && (order == null) && (fields == null))
+            return holder;
 
-        Getter<Record> recordGetter = new Getter<>(Record.class);
-        for (String param : request.queryParams()) {
-            String name = param.endsWith("[]") ? param.substring(0, param.length() - 2) : param;
-
-            if (recordGetter.hasName(name)) {
-                String[] values = request.queryParamsValues(param);
-
-                if (recordGetter.getType(name) == String.class) {
-                    recordStream = recordStream.filter(record -> {
-                        String value = (String) recordGetter.getValue(name, record);
-                        return filterOnString(value, values);
-                    });
-                }
-
-                if (recordGetter.getType(name) == BigDecimal.class) {
-                    recordStream = recordStream.filter(record -> {
-                        BigDecimal value = (BigDecimal) recordGetter.getValue(name, record);
-                        return filterOnBigDecimal(value, values);
-                    });
-                }
+        RecordSelection records = getPage(holder.getRecords(), order, (offset != null) ? offset : 0, limit);
+        if (fields != null)
+            records = project(records, fields.split(","));
+        return holder.withRecords(records, ((offset != null) || (limit != null)) ? holder.getRecords().size() : null);
+    }
+
+    /**
+     * For the given request of a DataTables table in server-side processing mode, filter the records and return
+     * the requested page: the parameters 'start' and 'length' determine the page, the 'order' parameters the sort
+     * order and the 'data' of the 'columns' parameters the fields to return.
+     *
+     * @param request The request with filters set.
+     * @return The page of filtered records.
+     * @throws IllegalArgumentException When the filters are malformed.
+     */
+    public TablePage getTablePage(Request request) {
+        Integer draw = getNumber("draw", request.queryParams("draw"), 0);
+        Integer start = getNumber("start", request.queryParams("start"), 0);
+        String length = request.queryParams("length");
+        Integer limit = "-1".equals(length) ? null : getNumber("length", length, 0);
+
+        // Columns without a field of the records, like the minting period, are not projected nor sorted on
+        List<Column> columns = new ArrayList<>();
+        for (int i = 0; request.queryParams("columns[" + i + "][data]") != null; i++)
+            columns.add(Column.forName(request.queryParams("columns[" + i + "][data]")));
+
+        List<Column> orderColumns = new ArrayList<>();
+        List<Boolean> descending = new ArrayList<>();
+        for (int i = 0; request.queryParams("order[" + i + "][column]") != null; i++) {
+            Integer index = getNumber("order[" + i + "][column]", request.queryParams("order[" + i + "][column]"), 0);
+            if (index == null)
+                throw new IllegalArgumentException("Missing column to sort on for order " + i);
+            if (index >= columns.size())
+                throw new IllegalArgumentException("Cannot sort on unknown column " + index);
+            if (columns.get(index) != null) {
+                orderColumns.add(columns.get(index));
+                descending.add("desc".equalsIgnoreCase(request.queryParams("order[" + i + "][dir]")));
             }
         }
 
-        return recordStream.collect(Collectors.toList());
+        boolean[] directions = new boolean[descending.size()];
+        for (int i = 0; i < directions.length; i++)
+            directions[i] = descending.get(i);
+        RecordOrder order = !orderColumns.isEmpty()
+                ? new RecordOrder(orderColumns.toArray(new Column[0]), directions) : null;
+
+        RecordSelection records = getFilteredRecords(request).getRecords();
+        RecordSelection page = getPage(records, order, (start != null) ? start : 0, limit)
+                .project(columns.stream().filter(Objects::nonNull).distinct().toArray(Column[]::new), false);
+
+        return new TablePage((draw != null) ? draw : 0, records.getStore().size(), records.size(), page);
     }
 
     /**
-     * For the given list of filtered records, return a map with String values found for each field.
+     * For the given request, filter the records and aggregate them into the series of a chart: grouped by the
+     * field on the x axis ('x') and the variable ('variable'), with the total of the field on the y axis ('y').
+     * The series are answered from the rollups if possible.
      *
-     * @param filteredRecords The list with filtered records.
-     * @return A map with a set of String values found for each field.
+     * @param request The request with filters set.
+     * @return The points of the series.
+     * @throws IllegalArgumentException When the filters or the fields of the chart are malformed.
      */
-    public Map<String, Set<String>> getValues(List<Record> filteredRecords) {
-        Map<String, Set<String>> values = new HashMap<>();
-        Getter<Record> recordGetter = new Getter<>(Record.class);
+    public List<SeriesPoint> getSeries(Request request) {
+        SeriesAggregator aggregator = new SeriesAggregator(
+                request.queryParams("x"), request.queryParams("y"), request.queryParams("variable"));
+        QueryPlan plan = getPlan(request);
 
-        filteredRecords.parallelStream().forEach(record -> {
-            config.fields.keySet().forEach(field -> {
-                Object value = recordGetter.getValue(field, record);
+        List<SeriesPoint> series = datasets.getRollups().aggregate(aggregator, plan);
+        LOGGER.debug("{} from the {}", aggregator, (series != null) ? "rollups" : "records");
 
-                if ((value != null) && (value instanceof String)) {
-                    if (!values.containsKey(field))
-                        values.put(field, new HashSet<>());
+        return (series != null) ? series : aggregator.aggregate(getFilteredRecords(plan).getRecords());
+    }
 
-                    Set<String> valuesForKey = values.get(field);
-                    valuesForKey.add((String) value);
-                }
-            });
-        });
+    /**
+     * For the given request, filter the records and aggregate them on the map: for every mint house and authority,
+     * the share of its years with data within the period ('from' and 'to'). The mint houses are shown as of
+     * the given year ('year'), for which the percentages are computed if requested ('pctByYear').
+     *
+     * @param request The request with filters set.
+     * @return The coverage of the mint houses and the authorities.
+     * @throws IllegalArgumentException When the filters or the year are malformed.
+     */
+    public MapHolder getMap(Request request) {
+        MapAggregator aggregator = new MapAggregator(
+                getNumber("from", request.queryParams("from"), 0),
+                getNumber("to", request.queryParams("to"), 0),
+                getNumber("year", request.queryParams("year"), 0),
+                Boolean.parseBoolean(request.queryParams("pctByYear")));
+        QueryPlan plan = getPlan(request);
 
-        return values;
+        // The join with the map does not depend on the year, so it is cached while moving through the years
+        QueryCache queryCache = datasets.getQueryCache();
+        MapCoverage coverage = queryCache.getMapCoverage(plan.getKey(), () -> MapCoverage.join(
+                queryCache.getGeoModel(), getFilteredRecords(queryCache, plan).getRecords()));
+        return aggregator.aggregate(coverage);
     }
 
     /**
-     * For the given list of filtered records, return the minimum and maximum found year.
+     * For the given request, filter the records and determine the values found and the minimum and maximum year.
      *
-     * @param filteredRecords The list with filtered records.
-     * @return An array with on index 0 the minimum year and on index 1 the maximum year.
+     * @param request The request with filters set.
+     * @return The filtered records with their values and years.
+     * @throws IllegalArgumentException When the filters are malformed.
      */
-    public Integer[] getMinAndMaxYear(List<Record> filteredRecords) {
-        List<Integer> years = filteredRecords.stream()
-                .flatMapToInt(record -> {
-                    Integer fromYear = (record.getDateFrom() != null) ? record.getDateFrom().getYear() : null;
-                    Integer toYear = (record.getDateTo() != null) ? record.getDateTo().getYear() : null;
-                    return IntStream.of(fromYear, toYear);
-                })
-                .boxed()
-                .collect(Collectors.toList());
-
-        if (years.isEmpty())
-            return new Integer[]{null, null};
-        return new Integer[]{Collections.min(years), Collections.max(years)};
+    private RecordsHolder getFilteredRecords(Request request) {
+        return getFilteredRecords(getPlan(request));
     }
 
     /**
-     * Determines whether the given record should be filtered out, based on a year range.
+     * Compiles the filters of the given request into a query plan.
      *
-     * @param record The record in question.
-     * @param from   The lower bound year.
-     * @param to     The upper bound year.
-     * @param years  How to determine which date ranges are valid.
-     * @return Whether the record should be filtered in.
+     * @param request The request with filters set.
+     * @return The query plan.
+     * @throws IllegalArgumentException When the filters are malformed.
      */
-    private boolean filterOnDate(Record record, LocalDate from, LocalDate to, String years) {
-        if ((record.getDateFrom() != null) && (record.getDateTo() != null)) {
-            if ((years != null) && years.equalsIgnoreCase("complete")) {
-                return record.getDateFrom().isAfter(from) && record.getDateTo().isBefore(to);
-            }
+    private QueryPlan getPlan(Request request) {
+        Map<String, String[]> params = new LinkedHashMap<>();
+        for (String param : request.queryParams())
+            params.put(param, request.queryParamsValues(param));
 
-            boolean partlyBeforeFrom = record.getDateFrom().isAfter(from) && record.getDateFrom().isBefore(to);
-            boolean partlyAfterTo = record.getDateTo().isAfter(from) && record.getDateTo().isBefore(to);
+        QueryPlan plan = QueryPlan.compile(params);
+        LOGGER.debug("{}", plan);
+        return plan;
+    }
 
-            return partlyBeforeFrom || partlyAfterTo;
-        }
-        return false;
+    /**
+     * Executes the given query plan and determines the values found and the minimum and maximum year.
+     * Results are cached by the normalized query, until a new version of the datasets is loaded.
+     *
+     * @param plan The query plan.
+     * @return The filtered records with their values and years.
+     */
+    private RecordsHolder getFilteredRecords(QueryPlan plan) {
+        return getFilteredRecords(datasets.getQueryCache(), plan);
     }
 
     /**
-     * Determines whether the given record value should be filtered out, based on string criteria.
+     * Executes the given query plan on the records of the given cache.
      *
-     * @param value    The record value in question.
-     * @param criteria An array of criteria.
-     * @return Whether the record should be filtered in.
+     * @param queryCache The cache of query results, with the records to query.
+     * @param plan       The query plan.
+     * @return The filtered records with their values and years.
      */
-    private boolean filterOnString(String value, String[] criteria) {
-        for (String criterion : Arrays.asList(criteria)) {
-            String[] criterionSplit = criterion.split(":", 3);
-            if (criterionSplit.length == 3) {
-                String negative = criterionSplit[0];
-                String contains = criterionSplit[1];
-                String toMatch = criterionSplit[2];
-
-                boolean match = false;
-                if (value != null) {
-                    if (contains.equals("ctns"))
-                        match = value.toLowerCase().contains(toMatch.toLowerCase());
-                    else
-                        match = value.equalsIgnoreCase(toMatch);
-                }
-
-                if ((negative.equals("eq") && match) || (!negative.equals("eq") && !match))
-                    return true;
-            }
-        }
-        return false;
+    private RecordsHolder getFilteredRecords(QueryCache queryCache, QueryPlan plan) {
+        return queryCache.get(plan.getKey(),
+                () -> new QueryExecutor(queryCache.getStore(), config.fields.keySet()).execute(plan));
     }
 
     /**
-     * Determines whether the given record value should be filtered out, based on number criteria.
+     * Obtains a page of the given records, sorting only as far as needed for the page.
      *
-     * @param value    The record value in question.
-     * @param criteria An array of criteria.
-     * @return Whether the record should be filtered in.
+     * @param records The records.
+     * @param order   The sort order, or null to keep the records in the order of their rows.
+     * @param offset  The position of the first record on the page.
+     * @param limit   The maximum number of records on the page, or null for all remaining records.
+     * @return The page of records.
      */
-    private boolean filterOnBigDecimal(BigDecimal value, String[] criteria) {
-        for (String criterion : Arrays.asList(criteria)) {
-            String[] criterionSplit = criterion.split(":", 3);
-            if (criterionSplit.length == 3) {
-                String negative = criterionSplit[0];
-                String minStr = criterionSplit[1];
-                String maxStr = criterionSplit[2];
-
-                boolean match = false;
-                if (value != null) {
-                    try {
-                        BigDecimal min = new BigDecimal(minStr);
-                        BigDecimal max = new BigDecimal(maxStr);
-                        match = (min.compareTo(value) <= 0) && (max.compareTo(value) >= 0);
-                    }
-                    catch (NumberFormatException nfe) {
-                        match = false;
-                    }
-                }
-
-                if ((negative.equals("eq") && match) || (!negative.equals("eq") && !match))
-                    return true;
-            }
+    private RecordSelection getPage(RecordSelection records, RecordOrder order, int offset, Integer limit) {
+        int from = Math.min(offset, records.size());
+        int to = (limit != null) ? (int) Math.min(records.size(), (long) from + limit) : records.size();
+
+        if (order != null)
+            records = order.getFirst(records, to);
+        return ((from == 0) && (to == records.size())) ? records : records.slice(from, to);
+    }
+
+    /**
+     * Projects the given records on the given fields.
+     *
+     * @param records The records.
+     * @param fields  The names of the fields, which may include 'totalDays'.
+     * @return The projected records.
+     * @throws IllegalArgumentException When a field is unknown.
+     */
+    private RecordSelection project(RecordSelection records, String[] fields) {
+        List<Column> columns = new ArrayList<>();
+        boolean withTotalDays = false;
+        for (String field : fields) {
+            String name = field.trim();
+            if (name.equals("totalDays"))
+                withTotalDays = true;
+            else if (Column.forName(name) != null)
+                columns.add(Column.forName(name));
+            else if (!name.isEmpty())
+                throw new IllegalArgumentException("Unknown field '" + name + "'");
         }
-        return false;
+        return records.project(columns.stream().distinct().toArray(Column[]::new), withTotalDays);
     }
 
     /**
-     * For a given year, obtain the LocalDate representation.
+     * Parses a number given as a request parameter.
      *
-     * @param year  The year in question.
-     * @param start Whether it should be a date from the start, or the end of the year.
-     * @return The LocalDate.
+     * @param name  The name of the parameter.
+     * @param value The value of the parameter, or null.
+     * @param min   The minimum value.
+     * @return The number, or null if not given.
+     * @throws IllegalArgumentException When the value is not a number of at least the minimum value.
      */
-    private LocalDate getDate(String year, boolean start) {
+    private Integer getNumber(String name, String value, int min) {
+        if ((value == null) || value.isEmpty())
+            return null;
+
+        int number;
         try {
-            return start ? LocalDate.of(Integer.valueOf(year), 1, 1) : LocalDate.of(Integer.valueOf(year), 12, 31);
+            number = Integer.parseInt(value);
         }
-        catch (NumberFormatException | DateTimeParseException | NullPointerException ex) {
-            return null;
+        catch (NumberFormatException nfe) {
+            number = Integer.MIN_VALUE;
         }
+
+        if (number < min)
+            throw new IllegalArgumentException("Invalid " + name + " '" + value + "'");
+        return number;
     }
 }
@@ -1,29 +1,34 @@
 package org.iish.coins.record;
 
-import java.util.List;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
 /**
- * Holds a list of records and a set of values for each field.
+ * Holds the records, a set of values for each field and the number of records with each value.
  */
 public class RecordsHolder {
-    private List<Record> records;
+    private RecordSelection records;
     private Map<String, Set<String>> values;
+    private Map<String, Map<String, Integer>> valueCounts;
     private Integer minYear;
     private Integer maxYear;
+    private Integer total;
 
     /**
      * Sets up the RecordsHolder.
      *
-     * @param records The list of records to hold.
-     * @param values  The map of field values to hold.
-     * @param minYear The minimum value to hold.
-     * @param maxYear The maximum value to hold.
+     * @param records     The records to hold.
+     * @param values      The map of field values to hold.
+     * @param valueCounts The map of field values with their counts to hold.
+     * @param minYear     The minimum value to hold.
+     * @param maxYear     The maximum value to hold.
      */
-    public RecordsHolder(List<Record> records, Map<String, Set<String>> values, Integer minYear, Integer maxYear) {
+    public RecordsHolder(RecordSelection records, Map<String, Set<String>> values,
+                         Map<String, Map<String, Integer>> valueCounts, Integer minYear, Integer maxYear) {
         this.records = records;
         this.values = values;
+        this.valueCounts = valueCounts;
         this.minYear = minYear;
         this.maxYear = maxYear;
     }
@@ -31,9 +36,9 @@ public class RecordsHolder {
     /**
      * Obtain the records from the holder.
      *
-     * @return A list of records.
+     * @return The records.
      */
-    public List<Record> getRecords() {
+    public RecordSelection getRecords() {
         return records;
     }
 
@@ -46,6 +51,63 @@ public class RecordsHolder {
         return values;
     }
 
+    /**
+     * Obtain the values map with their counts from the holder.
+     *
+     * @return A map containing the values with the number of records for each field,
+     * ordered from the most to the least frequent value; or null if left out.
+     */
+    public Map<String, Map<String, Integer>> getValueCounts() {
+        return valueCounts;
+    }
+
+    /**
+     * Obtain a copy of the holder with only the counts of the most frequent values for each field.
+     * The set of values for each field remains complete.
+     *
+     * @param limit The maximum number of values with their counts for each field.
+     * @return The copy of the holder.
+     */
+    public RecordsHolder withFacetLimit(int limit) {
+        Map<String, Map<String, Integer>> limitedValueCounts = new LinkedHashMap<>();
+        valueCounts.forEach((field, counts) -> {
+            Map<String, Integer> limitedCounts = new LinkedHashMap<>();
+            for (Map.Entry<String, Integer> count : counts.entrySet()) {
+                if (limitedCounts.size() == limit)
+                    break;
+                limitedCounts.put(count.getKey(), count.getValue());
+            }
+            limitedValueCounts.put(field, limitedCounts);
+        });
+        RecordsHolder holder = new RecordsHolder(records, values, limitedValueCounts, minYear, maxYear);
+        holder.total = total;
+        return holder;
+    }
+
+    /**
+     * Obtain a copy of the holder without the counts of the values. The set of values for each field remains complete.
+     *
+     * @return The copy of the holder.
+     */
+    public RecordsHolder withoutValueCounts() {
+        RecordsHolder holder = new RecordsHolder(records, values, null, minYear, maxYear);
+        holder.total = total;
+        return holder;
+    }
+
+    /**
+     * Obtain a copy of the holder with other records, like a page of the records.
+     *
+     * @param records The records to hold.
+     * @param total   The total number of filtered records, if the records are only part of them, or null.
+     * @return The copy of the holder.
+     */
+    public RecordsHolder withRecords(RecordSelection records, Integer total) {
+        RecordsHolder holder = new RecordsHolder(records, values, valueCounts, minYear, maxYear);
+        holder.total = total;
+        return holder;
+    }
+
     /**
      * Obtain the minimum year from the dataset from the holder.
      *
@@ -63,4 +125,13 @@ public class RecordsHolder {
     public Integer getMaxYear() {
         return maxYear;
     }
+
+    /**
+     * Obtain the total number of filtered records, if the holder holds only part of them.
+     *
+     * @return The total number of filtered records, or null if the holder holds all of them.
+     */
+    public Integer getTotal() {
+        return total;
+    }
 }
@@ -0,0 +1,267 @@
+package org.iish.coins.record;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Rollup of the records by year and by the value of a single dimension, like the mint: the partial aggregates
+ * of the chart series by year, of the number of records and of every decimal column, built once for a record store.
+ * Every partial aggregate is held in dense arrays, indexed by year and by code, with the records without a value
+ * in the dimension after the last code.
+ * <p>
+ * The conditions on the period select records, not years: a record matching the period adds to all of its years.
+ * So a query with a condition on the period is only answered from the rollup if all records with the selected
+ * values match that condition anyway.
+ */
+public class RollupCube {
+    private final RecordStore store;
+    private final Column dimension;
+    private final int firstYear;
+    private final int years;
+    private final int categories;
+
+    private final int[] minFromDays;
+    private final int[] maxFromDays;
+    private final int[] minToDays;
+    private final int[] maxToDays;
+
+    private final Measure counts;
+    private final Map<Column, Measure> totals = new EnumMap<>(Column.class);
+
+    /**
+     * Builds the rollup of the given records by the given dimension.
+     *
+     * @param store     The records.
+     * @param dimension The string column to roll up by.
+     */
+    public RollupCube(RecordStore store, Column dimension) {
+        this.store = store;
+        this.dimension = dimension;
+        this.categories = store.getDictionary(dimension).length + 1;
+
+        int[] codes = store.getCodes(dimension);
+        int[] fromDays = store.getEpochDays(Column.DATE_FROM);
+        int[] toDays = store.getEpochDays(Column.DATE_TO);
+
+        this.minFromDays = new int[categories];
+        this.maxFromDays = new int[categories];
+        this.minToDays = new int[categories];
+        this.maxToDays = new int[categories];
+        Arrays.fill(minFromDays, Integer.MAX_VALUE);
+        Arrays.fill(maxFromDays, Integer.MIN_VALUE);
+        Arrays.fill(minToDays, Integer.MAX_VALUE);
+        Arrays.fill(maxToDays, Integer.MIN_VALUE);
+
+        // The records without a value are rolled up in a category of their own
+        int[] categoryOfRows = new int[store.size()];
+        for (int row = 0; row < categoryOfRows.length; row++) {
+            int category = (codes[row] != RecordStore.NULL_CODE) ? codes[row] : categories - 1;
+            categoryOfRows[row] = category;
+
+            if ((fromDays[row] != RecordStore.NULL_DATE) && (toDays[row] != RecordStore.NULL_DATE)) {
+                minFromDays[category] = Math.min(minFromDays[category], fromDays[row]);
+                maxFromDays[category] = Math.max(maxFromDays[category], fromDays[row]);
+                minToDays[category] = Math.min(minToDays[category], toDays[row]);
+                maxToDays[category] = Math.max(maxToDays[category], toDays[row]);
+            }
+        }
+
+        int minDay = Arrays.stream(minFromDays).min().orElse(Integer.MAX_VALUE);
+        int maxDay = Arrays.stream(maxToDays).max().orElse(Integer.MIN_VALUE);
+        boolean empty = minDay > maxDay;
+        this.firstYear = empty ? 0 : LocalDate.ofEpochDay(minDay).getYear();
+        this.years = empty ? 0 : LocalDate.ofEpochDay(maxDay).getYear() - firstYear + 1;
+
+        this.counts = new Measure(SeriesAggregator.aggregateByYear(store, null, categoryOfRows), false);
+        for (Column column : Column.values()) {
+            if (column.getType() == Column.Type.DECIMAL) {
+                totals.put(column, new Measure(SeriesAggregator.aggregateByYear(store, column, categoryOfRows),
+                        SeriesAggregator.isWeighted(column)));
+            }
+        }
+    }
+
+    /**
+     * Returns the records rolled up.
+     *
+     * @return The record store.
+     */
+    public RecordStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the dimension rolled up by.
+     *
+     * @return The string column.
+     */
+    public Column getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Returns the first year rolled up.
+     *
+     * @return The first year.
+     */
+    int getFirstYear() {
+        return firstYear;
+    }
+
+    /**
+     * Returns the number of years rolled up.
+     *
+     * @return The number of years.
+     */
+    int getYears() {
+        return years;
+    }
+
+    /**
+     * Returns the number of categories: the number of codes, plus one for the records without a value.
+     *
+     * @return The number of categories.
+     */
+    int getCategories() {
+        return categories;
+    }
+
+    /**
+     * Determines which categories match the given plan.
+     *
+     * @param plan The query plan.
+     * @return For each category, whether it matches; or null if the plan has conditions which cannot be applied
+     * to the rollup.
+     */
+    boolean[] getMatchingCategories(QueryPlan plan) {
+        boolean[] matching = plan.getMatchingCodes(store, dimension);
+        if (matching == null)
+            return null;
+
+        int minFromDay = Integer.MAX_VALUE, maxFromDay = Integer.MIN_VALUE;
+        int minToDay = Integer.MAX_VALUE, maxToDay = Integer.MIN_VALUE;
+        for (int category = 0; category < categories; category++) {
+            if (matching[category]) {
+                minFromDay = Math.min(minFromDay, minFromDays[category]);
+                maxFromDay = Math.max(maxFromDay, maxFromDays[category]);
+                minToDay = Math.min(minToDay, minToDays[category]);
+                maxToDay = Math.max(maxToDay, maxToDays[category]);
+            }
+        }
+
+        if ((minFromDay <= maxToDay) && !plan.matchesPeriodOfAll(minFromDay, maxFromDay, minToDay, maxToDay))
+            return null;
+        return matching;
+    }
+
+    /**
+     * Returns the partial aggregate of the number of records.
+     *
+     * @return The partial aggregate.
+     */
+    Measure getCounts() {
+        return counts;
+    }
+
+    /**
+     * Returns the partial aggregate of the given decimal column.
+     *
+     * @param column The decimal column.
+     * @return The partial aggregate.
+     */
+    Measure getTotals(Column column) {
+        return totals.get(column);
+    }
+
+    /**
+     * Estimates the memory held by this rollup.
+     *
+     * @return The estimated number of bytes.
+     */
+    public long getSizeInBytes() {
+        long size = counts.getSizeInBytes() + 16L * categories;
+        for (Measure measure : totals.values())
+            size += measure.getSizeInBytes();
+        return size;
+    }
+
+    /**
+     * A partial aggregate of the rollup: for each year and category the row of the first record, the total
+     * and, for averages, the total weight.
+     */
+    class Measure {
+        private final int[] firstRows;
+        private final double[] totals;
+        private final double[] weights;
+
+        /**
+         * Copies the given partial aggregate into dense arrays.
+         *
+         * @param aggregate The partial aggregate by year and by category.
+         * @param weighted  Whether the totals are weighted.
+         */
+        private Measure(SeriesAggregator.Aggregate aggregate, boolean weighted) {
+            this.firstRows = new int[years * categories];
+            this.totals = new double[years * categories];
+            this.weights = weighted ? new double[years * categories] : null;
+
+            Arrays.fill(firstRows, -1);
+            aggregate.copyTo(firstYear, categories, firstRows, totals, weights);
+        }
+
+        /**
+         * Returns the position of the given year and category in the arrays.
+         *
+         * @param year     The year.
+         * @param category The category.
+         * @return The position.
+         */
+        private int getPosition(int year, int category) {
+            return ((year - firstYear) * categories) + category;
+        }
+
+        /**
+         * Returns the row of the first record in the given year and category.
+         *
+         * @param year     The year.
+         * @param category The category.
+         * @return The row, or -1 if no record adds to the total.
+         */
+        int getFirstRow(int year, int category) {
+            return firstRows[getPosition(year, category)];
+        }
+
+        /**
+         * Returns the total of the given year and category.
+         *
+         * @param year     The year.
+         * @param category The category.
+         * @return The total.
+         */
+        double getTotal(int year, int category) {
+            return totals[getPosition(year, category)];
+        }
+
+        /**
+         * Returns the total weight of the given year and category.
+         *
+         * @param year     The year.
+         * @param category The category.
+         * @return The total weight, or 0 if the totals are not weighted.
+         */
+        double getWeight(int year, int category) {
+            return (weights != null) ? weights[getPosition(year, category)] : 0;
+        }
+
+        /**
+         * Estimates the memory held by this partial aggregate.
+         *
+         * @return The estimated number of bytes.
+         */
+        private long getSizeInBytes() {
+            return 4L * firstRows.length + 8L * totals.length + ((weights != null) ? 8L * weights.length : 0);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package org.iish.coins.record;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * The rollups of a single record store, one for each dimension, built in parallel. Chart series by year which
+ * only filter on the value of one of the dimensions, and on a period matched by all records with those values,
+ * are answered from its rollup without scanning the records.
+ */
+public class Rollups {
+    private final RecordStore store;
+    private final List<RollupCube> cubes;
+    private final long buildMillis;
+
+    /**
+     * Creates the rollups.
+     *
+     * @param store       The records rolled up.
+     * @param cubes       The rollup of each dimension.
+     * @param buildMillis The time it took to build the rollups.
+     */
+    private Rollups(RecordStore store, List<RollupCube> cubes, long buildMillis) {
+        this.store = store;
+        this.cubes = Collections.unmodifiableList(cubes);
+        this.buildMillis = buildMillis;
+    }
+
+    /**
+     * Builds the rollups of the given records by the given dimensions.
+     *
+     * @param store      The records.
+     * @param dimensions The string columns to roll up by.
+     * @return The rollups.
+     */
+    public static Rollups build(RecordStore store, Collection<Column> dimensions) {
+        long start = System.currentTimeMillis();
+        // Series which are not split are answered from the smallest rollup able to answer them
+        List<RollupCube> cubes = dimensions.parallelStream()
+                .map(dimension -> new RollupCube(store, dimension))
+                .sorted(Comparator.comparingInt(RollupCube::getCategories))
+                .collect(Collectors.toList());
+        return new Rollups(store, cubes, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Returns the records rolled up.
+     *
+     * @return The record store.
+     */
+    public RecordStore getStore() {
+        return store;
+    }
+
+    /**
+     * Returns the time it took to build the rollups.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+    /**
+     * Aggregates the records matching the given plan into the series of a chart from a rollup, if any rollup can
+     * answer the query. If the series are split by a variable, only the rollup by that variable can answer it.
+     *
+     * @param aggregator The aggregator of the series.
+     * @param plan       The query plan.
+     * @return The points of the series, or null if the query has to be answered from the records.
+     */
+    public List<SeriesPoint> aggregate(SeriesAggregator aggregator, QueryPlan plan) {
+        for (RollupCube cube : cubes) {
+            List<SeriesPoint> series = aggregator.aggregate(cube, plan);
+            if (series != null)
+                return series;
+        }
+        return null;
+    }
+
+    /**
+     * Estimates the memory held by the rollups.
+     *
+     * @return The estimated number of bytes.
+     */
+    public long getSizeInBytes() {
+        return cubes.stream().mapToLong(RollupCube::getSizeInBytes).sum();
+    }
+
+    /**
+     * Returns the statistics of the rollups.
+     *
+     * @return The dimensions with the number of values and the estimated size of their rollups,
+     * the total estimated size and the time it took to build the rollups.
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> dimensions = new LinkedHashMap<>();
+        for (RollupCube cube : cubes) {
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            statistics.put("values", cube.getCategories() - 1);
+            statistics.put("kilobytes", cube.getSizeInBytes() / 1024);
+            dimensions.put(cube.getDimension().getName(), statistics);
+        }
+
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("dimensions", dimensions);
+        statistics.put("kilobytes", getSizeInBytes() / 1024);
+        statistics.put("buildMs", buildMillis);
+        return statistics;
+    }
+}
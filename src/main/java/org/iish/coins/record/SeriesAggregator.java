@@ -0,0 +1,484 @@
+package org.iish.coins.record;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Aggregates records into the series of a chart: the records are grouped by the year or by the value of a field
+ * on the x axis and by the variable, and for every group the total of the field on the y axis is computed.
+ * <p>
+ * When grouped by year, the records are split over the years of their minting period, in proportion to the number
+ * of days in each year; the fields counting over the whole period are prorated as well. The fields which are
+ * an average are weighted by the quantity of coins, or by the number of days for records without a quantity.
+ * <p>
+ * The records are aggregated in parallel: every thread groups part of the records in its own partial aggregate,
+ * which are merged at the end. Queries by year may also be answered from the partial aggregates of a rollup.
+ */
+public class SeriesAggregator {
+    public static final String YEAR = "year";
+    public static final String TOTAL = "total";
+    public static final String NUMBER_OF_RECORDS = "Number of records";
+
+    private static final int NO_CATEGORY = -2;
+    private static final int SINGLE_CATEGORY = -1;
+
+    // The fields counting over the whole minting period and the fields which are an average, as in data.js
+    private static final Set<Column> DIVIDE_BY_DAYS =
+            EnumSet.of(Column.QUANTITY, Column.RAW_WEIGHT, Column.FINE_WEIGHT);
+    private static final Set<Column> DIVIDE_BY_QUANTITY =
+            EnumSet.of(Column.VALUE, Column.PURITY, Column.TAILLE, Column.VALUE_IN_HOURLY_WAGES);
+
+    private final Column x;
+    private final Column y;
+    private final Column variable;
+    private final String singleCategory;
+
+    /**
+     * Creates an aggregator.
+     *
+     * @param x        The field on the x axis: 'year' or a text field.
+     * @param y        The field on the y axis: 'total' to count the records, or a field.
+     * @param variable The field to split the series by, or 'total' or empty for a single series.
+     * @throws IllegalArgumentException When a field is unknown or cannot be used on its axis.
+     */
+    public SeriesAggregator(String x, String y, String variable) {
+        this.x = YEAR.equals(x) ? null : getColumn("x", x, EnumSet.of(Column.Type.STRING));
+        this.y = TOTAL.equals(y) ? null : getColumn("y", y, EnumSet.of(Column.Type.STRING, Column.Type.DECIMAL));
+        this.variable = ((variable == null) || variable.isEmpty() || TOTAL.equals(variable))
+                ? null : getColumn("variable", variable, EnumSet.of(Column.Type.STRING));
+        this.singleCategory = ((this.y == null) || TOTAL.equals(variable)) ? NUMBER_OF_RECORDS : y;
+    }
+
+    /**
+     * Creates an aggregator by year.
+     *
+     * @param y The decimal column on the y axis, or null to count the records.
+     */
+    private SeriesAggregator(Column y) {
+        this.x = null;
+        this.y = y;
+        this.variable = null;
+        this.singleCategory = NUMBER_OF_RECORDS;
+    }
+
+    /**
+     * Aggregates the given records.
+     *
+     * @param records The records.
+     * @return The points of the series: ordered by year, or by the first record with the value on the x axis.
+     */
+    public List<SeriesPoint> aggregate(RecordSelection records) {
+        RecordStore store = records.getStore();
+        int[] categories = (variable != null) ? store.getCodes(variable) : null;
+        Aggregate aggregate = aggregate(store, IntStream.range(0, records.size()).map(records::getRow), categories);
+        return getPoints(store, aggregate);
+    }
+
+    /**
+     * Aggregates the records matching the given plan from the partial aggregates of the given rollup, rather than
+     * from the records themselves. Only queries by year with a number on the y axis, split by the dimension of the
+     * rollup if split at all, can be answered from a rollup; and only if the plan is answerable by the rollup.
+     *
+     * @param rollup The rollup.
+     * @param plan   The query plan.
+     * @return The points of the series ordered by year, or null if the query cannot be answered from the rollup.
+     */
+    List<SeriesPoint> aggregate(RollupCube rollup, QueryPlan plan) {
+        if ((x != null) || ((y != null) && (y.getType() != Column.Type.DECIMAL)))
+            return null;
+        if ((variable != null) && (variable != rollup.getDimension()))
+            return null;
+
+        boolean[] matching = rollup.getMatchingCategories(plan);
+        if (matching == null)
+            return null;
+
+        // When split by the dimension, the records without a value are left out
+        int categories = (variable != null) ? rollup.getCategories() - 1 : rollup.getCategories();
+        RollupCube.Measure counts = rollup.getCounts();
+        RollupCube.Measure totals = (y != null) ? rollup.getTotals(y) : counts;
+
+        Aggregate result = new Aggregate();
+        for (int year = rollup.getFirstYear(); year < rollup.getFirstYear() + rollup.getYears(); year++) {
+            for (int category = 0; category < categories; category++) {
+                // Every record adds to the count of each of its years, so the counts determine the years to show
+                if (!matching[category] || (counts.getFirstRow(year, category) < 0))
+                    continue;
+
+                Group group = result.getGroup(year, counts.getFirstRow(year, category));
+                if (totals.getFirstRow(year, category) >= 0) {
+                    group.add((variable != null) ? category : SINGLE_CATEGORY, totals.getFirstRow(year, category),
+                            totals.getTotal(year, category), totals.getWeight(year, category));
+                }
+            }
+        }
+
+        return getPoints(rollup.getStore(), result);
+    }
+
+    /**
+     * Determines whether the totals of the given decimal column are averages, weighted by the quantity of coins.
+     *
+     * @param column The decimal column.
+     * @return Whether the totals are weighted.
+     */
+    static boolean isWeighted(Column column) {
+        return DIVIDE_BY_QUANTITY.contains(column);
+    }
+
+    /**
+     * Aggregates all records by year and by the given categories, for each year leaving the totals per category
+     * unfinished: the partial aggregates of a rollup.
+     *
+     * @param store      The records.
+     * @param y          The decimal column on the y axis, or null to count the records.
+     * @param categories The category of each record.
+     * @return The partial aggregate.
+     */
+    static Aggregate aggregateByYear(RecordStore store, Column y, int[] categories) {
+        return new SeriesAggregator(y).aggregate(store, IntStream.range(0, store.size()), categories);
+    }
+
+    /**
+     * Aggregates the given rows in parallel.
+     *
+     * @param store      The records.
+     * @param rows       The rows of the records.
+     * @param categories The category of each record, or null for a single category.
+     * @return The aggregate.
+     */
+    private Aggregate aggregate(RecordStore store, IntStream rows, int[] categories) {
+        return rows.parallel().collect(
+                () -> new Accumulator(store, categories), Accumulator::accept, Accumulator::merge).aggregate;
+    }
+
+    /**
+     * Finishes the totals of the given aggregate.
+     *
+     * @param store     The records.
+     * @param aggregate The aggregate.
+     * @return The points of the series: ordered by year, or by the first record with the value on the x axis.
+     */
+    private List<SeriesPoint> getPoints(RecordStore store, Aggregate aggregate) {
+        String[] xDictionary = (x != null) ? store.getDictionary(x) : null;
+        String[] variableDictionary = (variable != null) ? store.getDictionary(variable) : null;
+        boolean weighted = (y != null) && DIVIDE_BY_QUANTITY.contains(y);
+
+        List<Map.Entry<Integer, Group>> groups = new ArrayList<>(aggregate.groups.entrySet());
+        if (x == null)
+            groups.sort(Map.Entry.comparingByKey());
+        else
+            groups.sort(Comparator.comparingInt(entry -> entry.getValue().firstRow));
+
+        List<SeriesPoint> points = new ArrayList<>();
+        for (Map.Entry<Integer, Group> group : groups) {
+            List<Map.Entry<Integer, Cell>> cells = new ArrayList<>(group.getValue().cells.entrySet());
+            cells.sort(Comparator.comparingInt(entry -> entry.getValue().firstRow));
+
+            Map<String, Double> totals = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Cell> cell : cells) {
+                String category = (cell.getKey() == SINGLE_CATEGORY)
+                        ? singleCategory : variableDictionary[cell.getKey()];
+                double total = weighted
+                        ? cell.getValue().total / cell.getValue().weight : cell.getValue().total;
+
+                // Leave out totals which cannot be computed, like averages without any quantity
+                if (!Double.isNaN(total) && !Double.isInfinite(total))
+                    totals.put(category, round(category, total));
+            }
+
+            Object point = (x == null) ? (Object) group.getKey() : xDictionary[group.getKey()];
+            points.add(new SeriesPoint(point, totals));
+        }
+        return points;
+    }
+
+    @Override
+    public String toString() {
+        return "x=" + ((x != null) ? x.getName() : YEAR) + " y=" + ((y != null) ? y.getName() : TOTAL)
+                + " variable=" + ((variable != null) ? variable.getName() : singleCategory);
+    }
+
+    /**
+     * Rounds a total: the quantity of coins to a whole number, any other total to three decimals.
+     *
+     * @param category The name of the series.
+     * @param total    The total.
+     * @return The rounded total.
+     */
+    private static double round(String category, double total) {
+        if (category.equals(Column.QUANTITY.getName()))
+            return Math.round(total);
+        return Math.round(total * 1000) / 1000d;
+    }
+
+    /**
+     * Returns the column with the given name, to be used on the given axis.
+     *
+     * @param axis  The axis.
+     * @param name  The name of the column.
+     * @param types The types of columns allowed on the axis.
+     * @return The column.
+     * @throws IllegalArgumentException When the column is unknown or of another type.
+     */
+    private static Column getColumn(String axis, String name, Set<Column.Type> types) {
+        Column column = (name != null) ? Column.forName(name) : null;
+        if ((column == null) || !types.contains(column.getType()))
+            throw new IllegalArgumentException("Invalid " + axis + " '" + name + "'");
+        return column;
+    }
+
+    /**
+     * Aggregates part of the records into its own partial aggregate.
+     */
+    private class Accumulator {
+        private final Aggregate aggregate = new Aggregate();
+
+        private final int[] fromDays;
+        private final int[] toDays;
+        private final int[] xCodes;
+        private final int[] yCodes;
+        private final long[] yValues;
+        private final double yDivisor;
+        private final int[] categories;
+        private final long[] quantities;
+        private final double quantityDivisor;
+
+        /**
+         * Creates an empty accumulator.
+         *
+         * @param store      The records.
+         * @param categories The category of each record, or null for a single category.
+         */
+        private Accumulator(RecordStore store, int[] categories) {
+            this.fromDays = store.getEpochDays(Column.DATE_FROM);
+            this.toDays = store.getEpochDays(Column.DATE_TO);
+            this.xCodes = (x != null) ? store.getCodes(x) : null;
+            this.yCodes = ((y != null) && (y.getType() == Column.Type.STRING)) ? store.getCodes(y) : null;
+            this.yValues = ((y != null) && (y.getType() == Column.Type.DECIMAL)) ? store.getUnscaledValues(y) : null;
+            this.yDivisor = (y != null) ? Math.pow(10, y.getScale()) : 1;
+            this.categories = categories;
+            this.quantities = store.getUnscaledValues(Column.QUANTITY);
+            this.quantityDivisor = Math.pow(10, Column.QUANTITY.getScale());
+        }
+
+        /**
+         * Adds a record.
+         *
+         * @param row The row of the record.
+         */
+        private void accept(int row) {
+            int category = (categories == null) ? SINGLE_CATEGORY
+                    : (categories[row] != RecordStore.NULL_CODE) ? categories[row] : NO_CATEGORY;
+            if (category == NO_CATEGORY)
+                return;
+
+            int from = fromDays[row], to = toDays[row];
+            double totalDays = ((from != RecordStore.NULL_DATE) && (to != RecordStore.NULL_DATE))
+                    ? (double) to - from + 1 : 0;
+
+            if (x != null) {
+                if (xCodes[row] != RecordStore.NULL_CODE)
+                    add(xCodes[row], category, row, totalDays, totalDays);
+                return;
+            }
+
+            if ((from == RecordStore.NULL_DATE) || (to == RecordStore.NULL_DATE))
+                return;
+
+            int lastYear = LocalDate.ofEpochDay(to).getYear();
+            for (int year = LocalDate.ofEpochDay(from).getYear(); year <= lastYear; year++) {
+                long firstDay = LocalDate.ofYearDay(year, 1).toEpochDay();
+                long lastDay = LocalDate.ofYearDay(year + 1, 1).toEpochDay() - 1;
+                add(year, category, row, Math.min(to, lastDay) - Math.max(from, firstDay) + 1, totalDays);
+            }
+        }
+
+        /**
+         * Adds (the part of) a record to a group.
+         *
+         * @param key       The year or code on the x axis.
+         * @param category  The category of the record.
+         * @param row       The row of the record.
+         * @param days      The number of days of the record in the group.
+         * @param totalDays The total number of days of the record.
+         */
+        private void add(int key, int category, int row, double days, double totalDays) {
+            Group group = aggregate.getGroup(key, row);
+
+            double total;
+            if ((y == null) || ((yCodes != null) && (yCodes[row] != RecordStore.NULL_CODE)))
+                total = 1;
+            else if ((yValues != null) && (yValues[row] != RecordStore.NULL_DECIMAL))
+                total = yValues[row] / yDivisor;
+            else
+                return;
+
+            // Records without a quantity of coins are weighted by their number of days
+            long quantity = quantities[row];
+            double weight = ((quantity != RecordStore.NULL_DECIMAL) && (quantity != 0))
+                    ? quantity / quantityDivisor : days;
+
+            if (x == null) {
+                weight = (weight / totalDays) * days;
+                if (DIVIDE_BY_DAYS.contains(y))
+                    total = (total / totalDays) * days;
+            }
+
+            if ((y != null) && DIVIDE_BY_QUANTITY.contains(y))
+                group.add(category, row, total * weight, weight);
+            else
+                group.add(category, row, total, 0);
+        }
+
+        /**
+         * Merges another accumulator into this one.
+         *
+         * @param other The other accumulator.
+         */
+        private void merge(Accumulator other) {
+            aggregate.merge(other.aggregate);
+        }
+    }
+
+    /**
+     * The groups of an aggregate, by the year or code on the x axis. Partial aggregates are merged into one.
+     */
+    static class Aggregate {
+        private final Map<Integer, Group> groups = new HashMap<>();
+
+        /**
+         * Returns the group for the given point, creating it if missing.
+         *
+         * @param key      The year or code on the x axis.
+         * @param firstRow The row of a record in the group.
+         * @return The group.
+         */
+        private Group getGroup(int key, int firstRow) {
+            Group group = groups.get(key);
+            if (group == null)
+                groups.put(key, group = new Group(firstRow));
+            else
+                group.firstRow = Math.min(group.firstRow, firstRow);
+            return group;
+        }
+
+        /**
+         * Merges another aggregate into this one.
+         *
+         * @param other The other aggregate.
+         */
+        private void merge(Aggregate other) {
+            for (Map.Entry<Integer, Group> entry : other.groups.entrySet()) {
+                Group group = groups.get(entry.getKey());
+                if (group == null)
+                    groups.put(entry.getKey(), entry.getValue());
+                else
+                    group.merge(entry.getValue());
+            }
+        }
+
+        /**
+         * Copies the totals of this aggregate by year to dense arrays, indexed by the offset of the year times
+         * the number of categories plus the category.
+         *
+         * @param firstYear  The first year.
+         * @param categories The number of categories.
+         * @param firstRows  The row of the first record of each total.
+         * @param totals     The totals.
+         * @param weights    The total weights, or null if the totals are not weighted.
+         */
+        void copyTo(int firstYear, int categories, int[] firstRows, double[] totals, double[] weights) {
+            for (Map.Entry<Integer, Group> group : groups.entrySet()) {
+                for (Map.Entry<Integer, Cell> cell : group.getValue().cells.entrySet()) {
+                    int position = ((group.getKey() - firstYear) * categories) + cell.getKey();
+                    firstRows[position] = cell.getValue().firstRow;
+                    totals[position] = cell.getValue().total;
+                    if (weights != null)
+                        weights[position] = cell.getValue().weight;
+                }
+            }
+        }
+    }
+
+    /**
+     * The totals of every category for a single point on the x axis.
+     */
+    private static class Group {
+        private int firstRow;
+        private final Map<Integer, Cell> cells = new HashMap<>();
+
+        /**
+         * Creates an empty group.
+         *
+         * @param firstRow The row of the first record in the group.
+         */
+        private Group(int firstRow) {
+            this.firstRow = firstRow;
+        }
+
+        /**
+         * Adds to the total of the given category.
+         *
+         * @param category The category.
+         * @param firstRow The row of the first record added.
+         * @param total    The total to add.
+         * @param weight   The weight to add.
+         */
+        private void add(int category, int firstRow, double total, double weight) {
+            Cell cell = cells.get(category);
+            if (cell == null)
+                cells.put(category, cell = new Cell(firstRow));
+            cell.firstRow = Math.min(cell.firstRow, firstRow);
+            cell.total += total;
+            cell.weight += weight;
+        }
+
+        /**
+         * Merges another group for the same point into this one.
+         *
+         * @param other The other group.
+         */
+        private void merge(Group other) {
+            firstRow = Math.min(firstRow, other.firstRow);
+            for (Map.Entry<Integer, Cell> entry : other.cells.entrySet()) {
+                Cell cell = cells.get(entry.getKey());
+                if (cell == null)
+                    cells.put(entry.getKey(), entry.getValue());
+                else
+                    cell.merge(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * The total of a single category for a single point on the x axis. For averages, the total is the weighted sum,
+     * to be divided by the total weight.
+     */
+    private static class Cell {
+        private int firstRow;
+        private double total = 0;
+        private double weight = 0;
+
+        /**
+         * Creates an empty cell.
+         *
+         * @param firstRow The row of the first record in the cell.
+         */
+        private Cell(int firstRow) {
+            this.firstRow = firstRow;
+        }
+
+        /**
+         * Merges another cell for the same category and point into this one.
+         *
+         * @param other The other cell.
+         */
+        private void merge(Cell other) {
+            firstRow = Math.min(firstRow, other.firstRow);
+            total += other.total;
+            weight += other.weight;
+        }
+    }
+}
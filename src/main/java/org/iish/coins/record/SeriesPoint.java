@@ -0,0 +1,40 @@
+package org.iish.coins.record;
+
+import java.util.Map;
+
+/**
+ * Holds a single point on the x axis of a chart, with the total of every variable for that point.
+ */
+public class SeriesPoint {
+    private Object x;
+    private Map<String, Double> totals;
+
+    /**
+     * Sets up the SeriesPoint.
+     *
+     * @param x      The point on the x axis: a year or a value.
+     * @param totals The total of every variable for this point.
+     */
+    public SeriesPoint(Object x, Map<String, Double> totals) {
+        this.x = x;
+        this.totals = totals;
+    }
+
+    /**
+     * Obtain the point on the x axis.
+     *
+     * @return The year or the value.
+     */
+    public Object getX() {
+        return x;
+    }
+
+    /**
+     * Obtain the totals.
+     *
+     * @return The total of every variable for this point.
+     */
+    public Map<String, Double> getTotals() {
+        return totals;
+    }
+}
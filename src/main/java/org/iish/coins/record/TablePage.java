@@ -0,0 +1,62 @@
+package org.iish.coins.record;
+
+/**
+ * Holds a page of records for a table, as expected by the server-side processing protocol of DataTables.
+ */
+public class TablePage {
+    private int draw;
+    private int recordsTotal;
+    private int recordsFiltered;
+    private RecordSelection data;
+
+    /**
+     * Sets up the TablePage.
+     *
+     * @param draw            The draw counter of the request, returned as is.
+     * @param recordsTotal    The total number of records.
+     * @param recordsFiltered The number of filtered records.
+     * @param data            The records on the page.
+     */
+    public TablePage(int draw, int recordsTotal, int recordsFiltered, RecordSelection data) {
+        this.draw = draw;
+        this.recordsTotal = recordsTotal;
+        this.recordsFiltered = recordsFiltered;
+        this.data = data;
+    }
+
+    /**
+     * Obtain the draw counter.
+     *
+     * @return The draw counter.
+     */
+    public int getDraw() {
+        return draw;
+    }
+
+    /**
+     * Obtain the total number of records.
+     *
+     * @return The total number of records.
+     */
+    public int getRecordsTotal() {
+        return recordsTotal;
+    }
+
+    /**
+     * Obtain the number of filtered records.
+     *
+     * @return The number of filtered records.
+     */
+    public int getRecordsFiltered() {
+        return recordsFiltered;
+    }
+
+    /**
+     * Obtain the records on the page.
+     *
+     * @return The records.
+     */
+    public RecordSelection getData() {
+        return data;
+    }
+}
@@ -0,0 +1,124 @@
+package org.iish.coins.record;
+
+import java.util.*;
+
+/**
+ * Trigram index of the dictionary of a string column: for each trigram of the lower case values the sorted codes
+ * of the values containing it. A lookup of a value of at least three characters intersects the codes of its trigrams
+ * and verifies the remaining candidates; shorter values are looked up by scanning the distinct values.
+ */
+public class TrigramIndex {
+    private static final int[] NO_CODES = new int[0];
+
+    private final String[] lowerCaseValues;
+    private final Map<Long, int[]> codesByTrigram;
+
+    /**
+     * Builds the index of the dictionary of a string column.
+     *
+     * @param dictionary The distinct values of the column, indexed by their code.
+     */
+    public TrigramIndex(String[] dictionary) {
+        this.lowerCaseValues = new String[dictionary.length];
+        for (int code = 0; code < dictionary.length; code++)
+            lowerCaseValues[code] = dictionary[code].toLowerCase();
+
+        // Codes are added in ascending order, so the codes of each trigram end up sorted
+        Map<Long, List<Integer>> codeLists = new HashMap<>();
+        for (int code = 0; code < lowerCaseValues.length; code++) {
+            Set<Long> trigrams = new HashSet<>();
+            String value = lowerCaseValues[code];
+            for (int i = 0; i + 3 <= value.length(); i++)
+                trigrams.add(getTrigram(value, i));
+            for (Long trigram : trigrams)
+                codeLists.computeIfAbsent(trigram, t -> new ArrayList<>()).add(code);
+        }
+
+        this.codesByTrigram = new HashMap<>(codeLists.size() * 4 / 3 + 1);
+        codeLists.forEach((trigram, codes) ->
+                codesByTrigram.put(trigram, codes.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Returns the codes of the values that contain the given value, ignoring case.
+     *
+     * @param lowerCaseValue The value to look for, in lower case.
+     * @return The sorted codes of the matching values.
+     */
+    public int[] getCodesContaining(String lowerCaseValue) {
+        if (lowerCaseValue.length() < 3)
+            return verify(null, lowerCaseValue);
+
+        // Intersect the codes of the trigrams, starting with the most selective one
+        List<int[]> codeLists = new ArrayList<>();
+        for (int i = 0; i + 3 <= lowerCaseValue.length(); i++) {
+            int[] codes = codesByTrigram.get(getTrigram(lowerCaseValue, i));
+            if (codes == null)
+                return NO_CODES;
+            codeLists.add(codes);
+        }
+        codeLists.sort(Comparator.comparingInt(codes -> codes.length));
+
+        int[] candidates = codeLists.get(0);
+        for (int i = 1; (i < codeLists.size()) && (candidates.length > 0); i++)
+            candidates = intersect(candidates, codeLists.get(i));
+
+        // All trigrams occurring in a value does not imply the value contains them in the right order
+        return verify(candidates, lowerCaseValue);
+    }
+
+    /**
+     * Verifies which of the candidate values contain the given value.
+     *
+     * @param candidates     The sorted codes of the candidate values, or null to scan all values.
+     * @param lowerCaseValue The value to look for, in lower case.
+     * @return The sorted codes of the matching values.
+     */
+    private int[] verify(int[] candidates, String lowerCaseValue) {
+        int count = (candidates != null) ? candidates.length : lowerCaseValues.length;
+        int[] codes = new int[count];
+        int matches = 0;
+        for (int i = 0; i < count; i++) {
+            int code = (candidates != null) ? candidates[i] : i;
+            if (lowerCaseValues[code].contains(lowerCaseValue))
+                codes[matches++] = code;
+        }
+        return (matches == count) ? codes : Arrays.copyOf(codes, matches);
+    }
+
+    /**
+     * Intersects two sorted arrays of codes.
+     *
+     * @param first  The first sorted codes.
+     * @param second The second sorted codes.
+     * @return The sorted codes occurring in both.
+     */
+    private static int[] intersect(int[] first, int[] second) {
+        int[] codes = new int[Math.min(first.length, second.length)];
+        int count = 0;
+        for (int i = 0, j = 0; (i < first.length) && (j < second.length); ) {
+            if (first[i] < second[j])
+                i++;
+            else if (first[i] > second[j])
+                j++;
+            else {
+                codes[count++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(codes, count);
+    }
+
+    /**
+     * Packs the three characters starting at the given position into a single key.
+     *
+     * @param value    The value.
+     * @param position The position of the first character.
+     * @return The trigram.
+     */
+    private static long getTrigram(String value, int position) {
+        return ((long) value.charAt(position) << 32) | ((long) value.charAt(position + 1) << 16)
+                | value.charAt(position + 2);
+    }
+}
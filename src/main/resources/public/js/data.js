@@ -254,14 +254,17 @@ var Data = (function ($) {
 
         function refreshData(params) {
             params = params || {};
+            that.params = params;
 
             refreshCallbacks.forEach(function (callback) {
                 callback();
             });
 
-            $.getJSON('json', params, function (data) {
+            // Only the values, the counts of the most frequent values and the years are needed;
+            // the records are paged and aggregated on the server
+            $.getJSON('json', $.extend({}, params, {limit: 0, facetLimit: 100}), function (data) {
                 that.values = data.values;
-                that.records = data.records;
+                that.valueCounts = data.valueCounts;
                 that.minYear = data.minYear;
                 that.maxYear = data.maxYear;
 
@@ -284,8 +287,27 @@ var Data = (function ($) {
 
                     var inputField = textBlock.find('input[type=text]').typeahead('destroy');
                     if ((that.values !== undefined) && (that.values[val] !== undefined)) {
+                        // The most frequent values come first with their counts, followed by all other values
+                        var counts = ((that.valueCounts !== undefined) && (that.valueCounts[val] !== undefined))
+                            ? that.valueCounts[val] : {};
+                        var source = Object.keys(counts).map(function (value) {
+                            return {name: value, count: counts[value]};
+                        });
+                        that.values[val].forEach(function (value) {
+                            if (!counts.hasOwnProperty(value))
+                                source.push({name: value});
+                        });
+
                         inputField.typeahead({
-                            source: that.values[val],
+                            source: source,
+                            displayText: function (item) {
+                                if (item.name === undefined)
+                                    return item;
+                                return (item.count !== undefined) ? item.name + ' (' + item.count + ')' : item.name;
+                            },
+                            updater: function (item) {
+                                return item.name;
+                            },
                             minLength: 0,
                             showHintOnFocus: true,
                             items: 'all'
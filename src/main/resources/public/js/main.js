@@ -25,10 +25,10 @@
     data.onData(function () {
         loading = false;
 
-        table.update(data.records, data.tableColumns.val());
-        chart.update(data.records, data.xAxis.val(), data.yAxis.val(), data.variable.val());
+        table.update(data.params, data.tableColumns.val());
+        chart.update(data.params, data.xAxis.val(), data.yAxis.val(), data.variable.val());
         map.update(
-            data.records, data.values, data.minYear, data.maxYear,
+            data.params, data.values, data.minYear, data.maxYear,
             $('input[name=from]').val(), $('input[name=to]').val(),
             data.pctByYear.is(':checked'), data.showFilteredMints.is(':checked')
         );
@@ -89,16 +89,4 @@
             }
         }
     };
-
-    $.addToObject = function (obj, key, ifNotExists, ifExists) {
-        if (obj[key] === undefined) {
-            obj[key] = ifNotExists;
-        }
-        else if ($.isFunction(ifExists)) {
-            obj[key] = ifExists(obj[key]);
-        }
-        else if (ifExists !== undefined) {
-            obj[key] = ifExists;
-        }
-    };
 })(jQuery, Data, Table, Chart, Map);
@@ -11,9 +11,6 @@ var Map = (function ($, d3, moment) {
         this.variables = variables;
         this.fields = fields;
 
-        this.authorities = {};
-        this.mints = {};
-
         var width = 1110,
             height = 1050;
 
@@ -79,8 +76,8 @@ var Map = (function ($, d3, moment) {
         var zoomBtns = createZoomBtns();
         var info = createInfo();
 
-        this.update = function (data, values, minYear, maxYear, yearFrom, yearTo, pctByYear, showFilteredMints) {
-            this.data = data;
+        this.update = function (params, values, minYear, maxYear, yearFrom, yearTo, pctByYear, showFilteredMints) {
+            this.params = params;
             this.values = values;
 
             this.minYear = minYear;
@@ -91,17 +88,12 @@ var Map = (function ($, d3, moment) {
 
             this.pctByYear = pctByYear;
             this.showFilteredMints = showFilteredMints;
-
-            this.yearsDiffAuthorities = {};
-            this.yearsDiffMints = {};
         };
 
         this.render = function () {
-            if ($.isArray(this.data) && !$.isEmptyObject(this.authorities) && !$.isEmptyObject(this.mints)) {
+            // The coverage of the mint houses and authorities is obtained for the year on the slider
+            if ((that.params !== undefined) && $.isArray(that.authoritiesFeatures) && $.isArray(that.mintsFeatures))
                 updateSlider();
-                updateAuthoritiesPercentages();
-                updateMintsPercentages();
-            }
         };
 
         function createMap() {
@@ -140,9 +132,7 @@ var Map = (function ($, d3, moment) {
                         .on('mouseover', onHoverMint)
                         .on('mouseout', hideInfo);
 
-                    updateSlider();
-                    updateAuthoritiesPercentages();
-                    updateMintsPercentages();
+                    that.render();
                 });
             });
 
@@ -404,32 +394,16 @@ var Map = (function ($, d3, moment) {
             d3.json('geo/mints', function (error, mint) {
                 if (error) return console.error(error);
 
+                // Only the first feature of every mint house is drawn; the server joins the periods of all features
                 var mints = [];
                 var features = [];
                 mint.features.forEach(function (feature) {
                     var props = feature.properties;
 
                     if ((props.MINT !== null) && (props.AUTHORITY !== null) &&
-                        (props.DATEfrom !== null) && (props.DATEto !== null)) {
-
-                        if (mints.indexOf(props.MINT) === -1) {
-                            mints.push(props.MINT);
-                            features.push(feature);
-                        }
-
-                        var from = moment(props.DATEfrom, 'YYYY/MM/DD');
-                        var to = moment(props.DATEto, 'YYYY/MM/DD');
-                        props.years = getYears(from.year(), to.year());
-
-                        $.addToObject(that.authorities, props.AUTHORITY, [props], function (val) {
-                            val.push(props);
-                            return val;
-                        });
-
-                        $.addToObject(that.mints, props.MINT, [props], function (val) {
-                            val.push(props);
-                            return val;
-                        });
+                        (props.DATEfrom !== null) && (props.DATEto !== null) && (mints.indexOf(props.MINT) === -1)) {
+                        mints.push(props.MINT);
+                        features.push(feature);
                     }
                 });
 
@@ -478,14 +452,8 @@ var Map = (function ($, d3, moment) {
             map.selectAll('.authority')
                 .data(that.authoritiesFeatures)
                 .attr('fill', function (d) {
-                    var auth = d.properties.AUTHORITY;
-
-                    // Compute the years difference if not done so already
-                    if (!(auth in that.yearsDiffAuthorities))
-                        that.yearsDiffAuthorities[auth] = getYearsDifferenceForAuthority(auth);
-
                     var fillColor = emptyColor;
-                    var percentages = getPercentages(that.yearsDiffAuthorities[auth]);
+                    var percentages = getCoverage('authorities', d.properties.AUTHORITY);
                     if ((percentages.parts.length > 0) && (percentages.percentage > 0))
                         fillColor = color(percentages.percentage);
                     return fillColor;
@@ -496,13 +464,7 @@ var Map = (function ($, d3, moment) {
             map.selectAll('.mint')
                 .data(that.mintsFeatures)
                 .each(function (mint) {
-                    var m = mint.properties.MINT;
-
-                    // Compute the years difference if not done so already
-                    if (!(m in that.yearsDiffMints))
-                        that.yearsDiffMints[m] = getYearsDifferenceForMint(m);
-
-                    var p = getPercentages(that.yearsDiffMints[m]);
+                    var p = getCoverage('mints', mint.properties.ID);
 
                     var arcs = d3.select(this)
                         .selectAll('.arc')
@@ -525,11 +487,11 @@ var Map = (function ($, d3, moment) {
         }
 
         function onHoverAuthority(d) {
-            setInfoBlock(getPercentages(that.yearsDiffAuthorities[d.properties.AUTHORITY]), d.properties.AUTHORITY);
+            setInfoBlock(getCoverage('authorities', d.properties.AUTHORITY), d.properties.AUTHORITY);
         }
 
         function onHoverMint(d) {
-            setInfoBlock(getPercentages(that.yearsDiffMints[d.properties.MINT]), d.properties.MINT);
+            setInfoBlock(getCoverage('mints', d.properties.ID), d.properties.MINT);
         }
 
         function hideInfo() {
@@ -602,121 +564,9 @@ var Map = (function ($, d3, moment) {
                 });
         }
 
-        function getYearsDifferenceForAuthority(authority) {
-            return getYearsDifference('AUTHORITY', 'MINT', authority, that.authorities);
-        }
-
-        function getYearsDifferenceForMint(mint) {
-            return getYearsDifference('MINT', 'AUTHORITY', mint, that.mints);
-        }
-
-        function getYearsDifference(keyFilter, keyObtain, value, props) {
-            // Make sure we have data to map the years difference
-            if (value in props) {
-                // Collect all the years that we should try to map
-                var yearsPerKey = {};
-                props[value].forEach(function (p) {
-                    if (yearsPerKey[p[keyObtain]] === undefined)
-                        yearsPerKey[p[keyObtain]] = {yearsBefore: [], yearsAfter: []};
-                    yearsPerKey[p[keyObtain]].yearsBefore = p.years.concat(yearsPerKey[p[keyObtain]].yearsBefore);
-                });
-
-                // Make sure the years are unique and remove all outside the range
-                $.forEachInObject(yearsPerKey, function (key, years) {
-                    var yearsFound = {};
-                    years.yearsBefore = years.yearsBefore.filter(function (year) {
-                        var isNotFound = yearsFound.hasOwnProperty(year) ? false : (yearsFound[year] = true);
-                        var isNotWithinRange = (that.yearFrom > year) || (that.yearTo < year);
-                        return isNotFound && !isNotWithinRange;
-                    });
-                    years.yearsAfter = years.yearsBefore.slice(0);
-                });
-
-                // Try to map all the filtered data
-                that.data.forEach(function (d) {
-                    if (d.QTTYcoins !== undefined) {
-                        var filterValues = getValues(d, keyFilter);
-
-                        if (filterValues.indexOf(value) >= 0) {
-                            var years = getYears(d.DATEfrom.year, d.DATEto.year);
-                            var allValues = getValues(d, keyObtain);
-
-                            // All years that we found in the filtered data, remove those from the list
-                            allValues.forEach(function (value) {
-                                if (value in yearsPerKey) {
-                                    yearsPerKey[value].yearsAfter = yearsPerKey[value].yearsAfter.filter(function (year) {
-                                        return years.indexOf(year) < 0;
-                                    });
-                                }
-                            });
-                        }
-                    }
-                });
-
-                return yearsPerKey;
-            }
-
-            return [];
-        }
-
-        function getPercentages(yearsDifference) {
-            var percentages = [];
-
-            // Map the years difference for each part to a percentage
-            $.forEachInObject(yearsDifference, function (key, yearsObj) {
-                var percentage = null;
-                if (that.pctByYear) {
-                    if (yearsObj.yearsBefore.indexOf(lastYearVal) >= 0)
-                        percentage = (yearsObj.yearsAfter.indexOf(lastYearVal) >= 0) ? 0 : 100;
-                }
-                else if (yearsObj.yearsAfter.length === yearsObj.yearsBefore.length) {
-                    percentage = 0;
-                }
-                else {
-                    percentage = 100 - Math.round(yearsObj.yearsAfter.length / (yearsObj.yearsBefore.length / 100));
-                    percentage = (percentage === 0) ? 1 : percentage;
-                }
-
-                if ($.isNumeric(percentage))
-                    percentages.push({percentage: percentage, name: key});
-            });
-
-            // Sort the collected percentages parts, first by percentage, then by name
-            percentages.sort(function (a, b) {
-                if (a.percentage > b.percentage)
-                    return -1;
-                if (a.percentage < b.percentage)
-                    return 1;
-                return a.name.localeCompare(b.name);
-            });
-
-            // Then compute the total percentage
-            var total = percentages.reduce(function (t, p) {
-                return t + p.percentage;
-            }, 0);
-            var avg = (percentages.length > 0) ? (total / percentages.length) : 0;
-
-            return {percentage: avg, parts: percentages};
-        }
-
-        function getYears(from, to) {
-            var years = [];
-            for (var year = from; year <= to; year++) {
-                years.push(year);
-            }
-            return years;
-        }
-
-        function getValues(data, key) {
-            var values = data[key];
-            if ((values === null) || (values === undefined))
-                return [];
-
-            return values.split('/').map(function (val) {
-                if (val.substr(val.length - 1) === '?')
-                    return val.substr(0, val.length - 1).trim();
-                return val.trim();
-            });
+        function getCoverage(type, key) {
+            var coverage = (that.coverage !== undefined) ? that.coverage[type][key] : undefined;
+            return (coverage !== undefined) ? coverage : {percentage: 0, parts: []};
         }
 
         function zoomed(translate, scale) {
@@ -743,31 +593,31 @@ var Map = (function ($, d3, moment) {
                     return 'visible';
                 });
 
-            map.selectAll('.mint')
-                .data(that.mintsFeatures)
-                .attr('visibility', function (d) {
-                    var visibility = 'hidden';
-
-                    // Only show a mint house, when it existed for the given year
-                    // or when it is among the filtered mints, if we only can show filtered mints
-                    if (!that.showFilteredMints || (that.values.MINT.indexOf(d.properties.MINT) >= 0)) {
-                        that.mints[d.properties.MINT].forEach(function (props) {
-                            var from = moment(props.DATEfrom, 'YYYY/MM/DD');
-                            var to = moment(props.DATEto, 'YYYY/MM/DD');
-
-                            if ((year >= from.year()) && (year <= to.year()))
-                                visibility = 'visible';
-                        });
-                    }
-
-                    return visibility;
-                });
+            // Only the coverage of the last year requested is shown
+            if (that.request)
+                that.request.abort();
+
+            var params = $.isNumeric(year) ? $.extend({}, that.params, {year: year, pctByYear: that.pctByYear})
+                : that.params;
+            that.request = $.getJSON('map', params, function (coverage) {
+                that.coverage = coverage;
+
+                map.selectAll('.mint')
+                    .data(that.mintsFeatures)
+                    .attr('visibility', function (d) {
+                        var mint = coverage.mints[d.properties.ID];
+
+                        // Only show a mint house, when it existed for the given year
+                        // or when it is among the filtered mints, if we only can show filtered mints
+                        if (!that.showFilteredMints || (that.values.MINT.indexOf(d.properties.MINT) >= 0))
+                            return ((mint !== undefined) && (mint.visible !== false)) ? 'visible' : 'hidden';
+                        return 'hidden';
+                    });
 
-            // If we show a percentage by year, then also update those percentages for this year
-            if (that.pctByYear) {
+                // The percentages by year are those of this year
                 updateAuthoritiesPercentages();
                 updateMintsPercentages();
-            }
+            });
         }
     };
 })(jQuery, d3, moment);
\ No newline at end of file
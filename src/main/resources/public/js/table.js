@@ -1,15 +1,9 @@
-/*global jQuery, moment*/
-var Table = (function ($, moment) {
+/*global jQuery*/
+var Table = (function ($) {
     'use strict';
 
     var that;
 
-    $.fn.dataTable.ext.type.order['custom-date-pre'] = function (d) {
-        if ((d !== null) && (d.length > 0))
-            return parseInt(moment(d, 'DD-MM-YYYY').format('x'));
-        return Number.NEGATIVE_INFINITY;
-    };
-
     return function (elem, variables, fields) {
         that = this;
 
@@ -17,8 +11,8 @@ var Table = (function ($, moment) {
         this.variables = variables;
         this.fields = fields;
 
-        this.update = function (data, columns) {
-            this.data = data;
+        this.update = function (params, columns) {
+            this.params = params;
             this.columns = columns;
         };
 
@@ -37,7 +31,6 @@ var Table = (function ($, moment) {
                 };
 
                 if (that.variables[field].date) {
-                    columnData.type = 'custom-date';
                     columnData.render = function (date) {
                         if (date && date.day && date.month && date.year)
                             return date.day + '-' + date.month + '-' + date.year;
@@ -47,6 +40,9 @@ var Table = (function ($, moment) {
 
                 tableColumns.push(columnData);
             });
+
+            // The identifier is needed to obtain the details of a record
+            tableColumns.push({data: 'UID', visible: false, orderable: false, defaultContent: ''});
             return tableColumns;
         }
 
@@ -58,8 +54,16 @@ var Table = (function ($, moment) {
 
             var table = $('<table class="table table-striped table-hover" style="width:100%;"></table>').appendTo(that.table);
 
+            // Only the current page is obtained from the server, already sorted
             that.dataTable = table.DataTable({
-                data: that.data,
+                serverSide: true,
+                processing: true,
+                ajax: {
+                    url: 'table',
+                    data: function (request) {
+                        return $.extend(request, that.params);
+                    }
+                },
                 columns: tableColumns,
                 searching: false
             });
@@ -71,8 +75,11 @@ var Table = (function ($, moment) {
                 if (row.child.isShown()) {
                     row.child.hide();
                 }
-                else {
-                    row.child(detailedDataHtml(row.data())).show();
+                else if (row.data().UID !== undefined) {
+                    $.getJSON('json', {UID: 'eq:exact:' + row.data().UID}, function (data) {
+                        if (data.records.length > 0)
+                            row.child(detailedDataHtml(data.records[0])).show();
+                    });
                 }
             });
         }
@@ -113,4 +120,4 @@ var Table = (function ($, moment) {
             return '<i>Unknown</i>';
         }
     };
-})(jQuery, moment);
\ No newline at end of file
+})(jQuery);
\ No newline at end of file
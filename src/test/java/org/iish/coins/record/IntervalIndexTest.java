@@ -0,0 +1,47 @@
+package org.iish.coins.record;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the interval index of the periods of the records against a scan of the records.
+ */
+public class IntervalIndexTest {
+    private final RecordStore store = TestRecords.random(2000, 3);
+
+    /**
+     * The periods within and the periods starting or ending within a range are the same as when comparing the dates
+     * of every record, both for narrow ranges and for wide ranges, which are looked up differently.
+     */
+    @Test
+    public void testRanges() {
+        int[][] ranges = {{1499, 1500}, {1505, 1505}, {1505, 1507}, {1501, 1519}, {1400, 1600}, {1600, 1700}};
+        for (int[] range : ranges) {
+            int fromDay = (int) LocalDate.of(range[0], 1, 1).toEpochDay();
+            int toDay = (int) LocalDate.of(range[1], 12, 31).toEpochDay();
+
+            BitSet within = new BitSet();
+            BitSet startingOrEnding = new BitSet();
+            for (int row = 0; row < store.size(); row++) {
+                int from = store.getEpochDay(Column.DATE_FROM, row);
+                int to = store.getEpochDay(Column.DATE_TO, row);
+                if ((from == RecordStore.NULL_DATE) || (to == RecordStore.NULL_DATE))
+                    continue;
+
+                if ((from > fromDay) && (to < toDay))
+                    within.set(row);
+                if (((from > fromDay) && (from < toDay)) || ((to > fromDay) && (to < toDay)))
+                    startingOrEnding.set(row);
+            }
+
+            String message = range[0] + "-" + range[1];
+            assertEquals(message, within, store.getPeriodIndex().getRowsWithin(fromDay, toDay));
+            assertEquals(message, startingOrEnding,
+                    store.getPeriodIndex().getRowsStartingOrEndingWithin(fromDay, toDay));
+        }
+    }
+}
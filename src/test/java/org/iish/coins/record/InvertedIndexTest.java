@@ -0,0 +1,38 @@
+package org.iish.coins.record;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the inverted indexes of the string columns of a record store against a scan of the records.
+ */
+public class InvertedIndexTest {
+    private final RecordStore store = TestRecords.random(2000, 3);
+
+    /**
+     * Equal ignoring case finds the same rows as comparing every value.
+     */
+    @Test
+    public void testEqualIgnoreCase() {
+        for (String value : new String[]{"amsterdam", "DORDRECHT/UTRECHT?", "Utrecht", "Utrech", ""}) {
+            BitSet expected = new BitSet();
+            for (int row = 0; row < store.size(); row++) {
+                if (value.equalsIgnoreCase(store.getString(Column.MINT, row)))
+                    expected.set(row);
+            }
+            assertEquals(value, expected, store.getIndex(Column.MINT).getRowsEqualIgnoreCase(value));
+        }
+    }
+
+    /**
+     * A column is unique if no two records have the same value.
+     */
+    @Test
+    public void testUnique() {
+        assertTrue(store.getIndex(Column.ID).isUnique());
+        assertFalse(store.getIndex(Column.MINT).isUnique());
+    }
+}
@@ -0,0 +1,166 @@
+package org.iish.coins.record;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the coverage of the mint houses and the authorities on the map, as computed by map.js before.
+ */
+public class MapAggregatorTest {
+    private final GeoModel geo = GeoModel.parse(geoJson(
+            feature("m1", "Amsterdam", "Holland", "1500/01/01", "1509/12/31"),
+            feature("m2", "Dordrecht", "Holland", "1503/01/01", "1504/12/31"),
+            feature("m3", "Utrecht", "Utrecht", "1300/01/01", "1599/12/31"),
+            feature("m4", "Utrecht", "Holland", "1600/01/01", "1601/12/31")));
+
+    private final RecordStore store = new TestRecords()
+            .row("Amsterdam", "Holland", "1500-03-01", "1501-02-01", "100")
+            .row("Dordrecht/Amsterdam?", "Holland", "1503-01-01", "1503-12-31", "10")
+            .row("Amsterdam", "Holland", "1505-01-01", "1505-12-31", null)
+            .row("Amsterdam", "Utrecht", "1506-01-01", "1506-12-31", "10")
+            .row("Utrecht", "Utrecht", "1450-01-01", "1450-12-31", "1")
+            .row("Utrecht", "Holland", "1700-01-01", "1700-12-31", "1")
+            .build();
+
+    private final MapCoverage coverage = MapCoverage.join(geo, TestRecords.all(store));
+
+    /**
+     * The percentage of a part is the share of its years with data; the records without a quantity of coins are
+     * left out, and a record of several mint houses adds to each of them.
+     */
+    @Test
+    public void testPercentages() {
+        MapHolder map = new MapAggregator(null, null, null, false).aggregate(coverage);
+
+        // Amsterdam has data in 1500, 1501 and 1503 out of 10 years, Dordrecht in 1503 out of 2 years
+        assertParts(map.getMints().get("m1"), "Holland:30");
+        assertParts(map.getMints().get("m2"), "Holland:50");
+        assertParts(map.getAuthorities().get("Holland"), "Dordrecht:50", "Amsterdam:30", "Utrecht:0");
+        assertEquals(80 / 3.0, map.getAuthorities().get("Holland").getPercentage(), 1e-9);
+        assertNull(map.getMints().get("m1").getVisible());
+    }
+
+    /**
+     * A single year with data out of many never shows as 0%, but no data at all does.
+     */
+    @Test
+    public void testZeroBecomesOne() {
+        MapHolder map = new MapAggregator(null, null, null, false).aggregate(coverage);
+
+        // Utrecht has data in 1 out of 300 years for Utrecht, which rounds to 0%
+        assertParts(map.getMints().get("m3"), "Utrecht:1", "Holland:0");
+        assertEquals(0.5, map.getMints().get("m3").getPercentage(), 1e-9);
+    }
+
+    /**
+     * Only the years within the range are taken into account.
+     */
+    @Test
+    public void testRange() {
+        MapHolder map = new MapAggregator(1501, 1504, null, false).aggregate(coverage);
+
+        assertParts(map.getMints().get("m1"), "Holland:50");
+        assertParts(map.getMints().get("m2"), "Holland:50");
+
+        map = new MapAggregator(1510, 1599, null, false).aggregate(coverage);
+        assertParts(map.getMints().get("m1"), "Holland:0");
+        assertParts(map.getMints().get("m2"), "Holland:0");
+    }
+
+    /**
+     * By year, a part has data in that year or not, and the parts not minting in that year are left out.
+     */
+    @Test
+    public void testByYear() {
+        MapHolder map = new MapAggregator(null, null, 1503, true).aggregate(coverage);
+        assertParts(map.getMints().get("m1"), "Holland:100");
+        assertParts(map.getAuthorities().get("Holland"), "Amsterdam:100", "Dordrecht:100");
+        assertTrue(map.getMints().get("m1").getVisible());
+
+        map = new MapAggregator(null, null, 1502, true).aggregate(coverage);
+        assertParts(map.getMints().get("m1"), "Holland:0");
+        assertParts(map.getMints().get("m2"));
+        assertFalse(map.getMints().get("m2").getVisible());
+        assertEquals(0, map.getMints().get("m2").getPercentage(), 0);
+    }
+
+    /**
+     * The same join with the map serves every year, as cached for a query.
+     */
+    @Test
+    public void testJoinIsReused() {
+        for (int year = 1499; year <= 1510; year++) {
+            MapHolder fromCoverage = new MapAggregator(1500, 1509, year, true).aggregate(coverage);
+            MapHolder fromRecords = new MapAggregator(1500, 1509, year, true)
+                    .aggregate(MapCoverage.join(geo, TestRecords.all(store)));
+            assertEquals(parts(fromRecords.getMints().get("m1")), parts(fromCoverage.getMints().get("m1")));
+            assertEquals(parts(fromRecords.getMints().get("m2")), parts(fromCoverage.getMints().get("m2")));
+        }
+
+        // The join holds all years with data, the range and the years of the mint house are applied afterwards
+        assertEquals("{1500, 1501, 1503}", coverage.getYearsWithData("Amsterdam", "Holland").toString());
+        assertEquals("{1700}", coverage.getYearsWithData("Utrecht", "Holland").toString());
+    }
+
+    /**
+     * A year is required for the percentages by year.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testByYearWithoutYear() {
+        new MapAggregator(null, null, null, true);
+    }
+
+    /**
+     * Asserts the parts of a feature, in order.
+     *
+     * @param feature The feature.
+     * @param parts   The names of the parts with their percentages, as 'name:percentage'.
+     */
+    private static void assertParts(MapFeature feature, String... parts) {
+        assertEquals(Arrays.asList(parts), parts(feature));
+    }
+
+    /**
+     * Formats the parts of a feature.
+     *
+     * @param feature The feature.
+     * @return The names of the parts with their percentages, as 'name:percentage'.
+     */
+    private static List<String> parts(MapFeature feature) {
+        return feature.getParts().stream()
+                .map(part -> part.getName() + ":" + part.getPercentage())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Formats a feature of the GeoJSON with the mint houses.
+     *
+     * @param id        The id of the feature.
+     * @param mint      The mint house.
+     * @param authority The authority.
+     * @param from      The start of the period, as 'YYYY/MM/DD'.
+     * @param to        The end of the period, as 'YYYY/MM/DD'.
+     * @return The feature.
+     */
+    private static String feature(String id, String mint, String authority, String from, String to) {
+        return "{\"type\": \"Feature\", \"properties\": {\"ID\": \"" + id + "\", \"MINT\": \"" + mint + "\", "
+                + "\"AUTHORITY\": \"" + authority + "\", \"DATEfrom\": \"" + from + "\", \"DATEto\": \"" + to + "\"}}";
+    }
+
+    /**
+     * Formats the GeoJSON with the mint houses.
+     *
+     * @param features The features.
+     * @return The GeoJSON.
+     */
+    private static byte[] geoJson(String... features) {
+        return ("{\"type\": \"FeatureCollection\", \"features\": [" + String.join(", ", features) + "]}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,104 @@
+package org.iish.coins.record;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the single pass over the rows of a query, which collects the rows, the value counts and the years in parallel.
+ */
+public class QueryExecutorTest {
+    private static final List<String> FIELDS = Arrays.asList("UID", "MINT", "AUTHORITY", "QTTYcoins");
+
+    private final RecordStore store = TestRecords.random(20000, 42);
+
+    /**
+     * The parallel accumulators are merged in row order, with the same rows and counts as a sequential scan.
+     */
+    @Test
+    public void testMergeInRowOrder() {
+        QueryPlan plan = QueryPlan.compile(Collections.singletonMap("VALUEd", new String[]{"ne:1000:2000"}));
+        RecordsHolder holder = new QueryExecutor(store, FIELDS).execute(plan);
+
+        int[] expected = TestRecords.rows(plan.execute(store));
+        int[] rows = TestRecords.rows(holder.getRecords());
+        assertTrue(expected.length > 10000);
+        assertArrayEquals(expected, rows);
+
+        Map<String, Integer> mints = new HashMap<>();
+        Map<String, Integer> authorities = new HashMap<>();
+        int minYear = Integer.MAX_VALUE;
+        int maxYear = Integer.MIN_VALUE;
+        for (int row : rows) {
+            if (store.getString(Column.MINT, row) != null)
+                mints.merge(store.getString(Column.MINT, row), 1, Integer::sum);
+            authorities.merge(store.getString(Column.AUTHORITY, row), 1, Integer::sum);
+
+            // The dates of a record are not necessarily both present
+            for (Column column : new Column[]{Column.DATE_FROM, Column.DATE_TO}) {
+                LocalDate date = store.getDate(column, row);
+                if (date != null) {
+                    minYear = Math.min(minYear, date.getYear());
+                    maxYear = Math.max(maxYear, date.getYear());
+                }
+            }
+        }
+
+        assertEquals(mints, holder.getValueCounts().get("MINT"));
+        assertEquals(authorities, holder.getValueCounts().get("AUTHORITY"));
+        assertEquals(Integer.valueOf(minYear), holder.getMinYear());
+        assertEquals(Integer.valueOf(maxYear), holder.getMaxYear());
+    }
+
+    /**
+     * The rows narrowed down by the indexes are streamed in parallel as well, still in row order.
+     */
+    @Test
+    public void testMergeCandidatesInRowOrder() {
+        Map<String, String[]> params = new LinkedHashMap<>();
+        params.put("MINT", new String[]{"ne:exact:Amsterdam"});
+        params.put("VALUEd", new String[]{"ne:1000:2000"});
+        QueryPlan plan = QueryPlan.compile(params);
+        RecordsHolder holder = new QueryExecutor(store, FIELDS).execute(plan);
+
+        int[] rows = TestRecords.rows(holder.getRecords());
+        assertTrue(rows.length > 5000);
+        assertArrayEquals(TestRecords.rows(plan.execute(store)), rows);
+
+        Map<String, Integer> mints = new HashMap<>();
+        for (int row : rows) {
+            assertFalse("amsterdam".equalsIgnoreCase(store.getString(Column.MINT, row)));
+            if (store.getString(Column.MINT, row) != null)
+                mints.merge(store.getString(Column.MINT, row), 1, Integer::sum);
+        }
+        assertEquals(mints, holder.getValueCounts().get("MINT"));
+    }
+
+    /**
+     * The values are counted from the most to the least frequent; values unique to a single record,
+     * like the identifiers, are listed but not counted, and only string fields are taken into account.
+     */
+    @Test
+    public void testValueCounts() {
+        RecordStore store = new TestRecords()
+                .row().with(Column.ID, "1").with(Column.MINT, "Utrecht")
+                .row().with(Column.ID, "2").with(Column.MINT, "Amsterdam")
+                .row().with(Column.ID, "3").with(Column.MINT, "Utrecht")
+                .row().with(Column.ID, "4")
+                .build();
+        RecordsHolder holder = new QueryExecutor(store, FIELDS).execute(QueryPlan.compile(Collections.emptyMap()));
+
+        assertEquals(Arrays.asList("Utrecht", "Amsterdam"),
+                new ArrayList<>(holder.getValueCounts().get("MINT").keySet()));
+        assertEquals(Integer.valueOf(2), holder.getValueCounts().get("MINT").get("Utrecht"));
+        assertFalse(holder.getValueCounts().containsKey("UID"));
+        assertEquals(new HashSet<>(Arrays.asList("1", "2", "3", "4")), holder.getValues().get("UID"));
+        assertFalse(holder.getValues().containsKey("AUTHORITY"));
+        assertFalse(holder.getValues().containsKey("QTTYcoins"));
+        assertNull(holder.getMinYear());
+        assertNull(holder.getMaxYear());
+    }
+}
@@ -0,0 +1,167 @@
+package org.iish.coins.record;
+
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.iish.coins.record.TestRecords.query;
+import static org.iish.coins.record.TestRecords.rows;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the compilation of request parameters into query plans and their execution on the indexes.
+ */
+public class QueryPlanTest {
+    private final RecordStore store = new TestRecords()
+            .row("Amsterdam", "Holland", "1500-01-01", "1500-12-31", "100").with(Column.VALUE, "1.5")
+            .row("Amsterdam", "Holland", "1501-06-01", "1503-06-30", "200")
+            .row("Utrecht", "Utrecht", "1499-01-01", "1500-06-30", null).with(Column.VALUE, "2")
+            .row(null, "Holland", "1502-01-01", "1502-12-31", "50").with(Column.VALUE, "0.5")
+            .row("Dordrecht/Amsterdam?", "Holland", "1503-01-01", "1504-12-31", "10").with(Column.VALUE, "3")
+            .row("utrecht", "Utrecht", null, null, "5")
+            .build();
+
+    /**
+     * Equal to a value matches the values equal ignoring case, never the records without a value.
+     */
+    @Test
+    public void testStringEqualsSkipsNull() {
+        assertArrayEquals(new int[]{0, 1}, query(store, "MINT", "eq:exact:Amsterdam"));
+        assertArrayEquals(new int[]{2, 5}, query(store, "MINT", "eq:exact:UTRECHT"));
+        assertArrayEquals(new int[0], query(store, "MINT", "eq:exact:Amster"));
+    }
+
+    /**
+     * Not equal to a value also matches the records without a value.
+     */
+    @Test
+    public void testStringNotEqualsMatchesNull() {
+        assertArrayEquals(new int[]{2, 3, 4, 5}, query(store, "MINT", "ne:exact:Amsterdam"));
+        assertArrayEquals(new int[]{0, 1, 3, 4}, query(store, "MINT[]", "ne:exact:utrecht"));
+    }
+
+    /**
+     * Within a range of numbers never matches the records without a value, outside a range always does.
+     */
+    @Test
+    public void testNumberConditionsWithNull() {
+        assertArrayEquals(new int[]{0, 2}, query(store, "VALUEd", "eq:1:2"));
+        assertArrayEquals(new int[]{1, 3, 4, 5}, query(store, "VALUEd", "ne:1:2"));
+        assertArrayEquals(new int[]{0, 1, 3, 4, 5}, query(store, "QTTYcoins", "eq:0:1000"));
+        assertArrayEquals(new int[]{2}, query(store, "QTTYcoins", "ne:0:1000"));
+    }
+
+    /**
+     * Containing a value is looked up in the trigram index, ignoring case, also for values shorter than a trigram.
+     */
+    @Test
+    public void testContains() {
+        assertArrayEquals(new int[]{0, 1, 4}, query(store, "MINT", "eq:ctns:STERD"));
+        assertArrayEquals(new int[]{2, 4, 5}, query(store, "MINT", "eq:ctns:rech"));
+        assertArrayEquals(new int[]{0, 1, 4}, query(store, "MINT", "eq:ctns:m"));
+        assertArrayEquals(new int[0], query(store, "MINT", "eq:ctns:sterdx"));
+        assertArrayEquals(new int[]{2, 3, 5}, query(store, "MINT", "ne:ctns:dam"));
+    }
+
+    /**
+     * The years of a period are compared by their first and last day, both exclusive: a record starting
+     * on the first day of the first year or ending on the last day of the last year does not lie within the years.
+     */
+    @Test
+    public void testPeriodAtExclusiveBounds() {
+        assertArrayEquals(new int[]{2}, rows(period("1500", "1500", null)));
+        assertArrayEquals(new int[0], rows(period("1500", "1500", "complete")));
+
+        assertArrayEquals(new int[]{0, 1, 2}, rows(period("1499", "1501", null)));
+        assertArrayEquals(new int[]{0}, rows(period("1499", "1501", "complete")));
+
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, rows(period("1400", "1600", "complete")));
+    }
+
+    /**
+     * A period without years, or with the last year before the first, does not restrict the records.
+     */
+    @Test
+    public void testEmptyPeriod() {
+        assertEquals(store.size(), period("1501", "1500", "complete").size());
+        assertEquals(store.size(), period(null, "1500", null).size());
+    }
+
+    /**
+     * A year with a fraction, as accepted by the search form, is truncated to the year.
+     */
+    @Test
+    public void testFractionalYears() {
+        assertArrayEquals(rows(period("1499", "1501", null)), rows(period("1499.9", " 1501.2", null)));
+        assertArrayEquals(rows(period("1500", "1500", null)), rows(period("1500.5", "1500.25", null)));
+    }
+
+    /**
+     * An invalid criterion or year is rejected.
+     */
+    @Test
+    public void testInvalidCriteria() {
+        assertInvalid("MINT", "eq:like:Amsterdam");
+        assertInvalid("VALUEd", "eq:one:two");
+        assertInvalid("from", "year", "to", "1500");
+        assertInvalid("from", "1500", "to", "Infinity");
+    }
+
+    /**
+     * The same conditions give the same key, in any order and with repeated criteria.
+     */
+    @Test
+    public void testKey() {
+        Map<String, String[]> first = new LinkedHashMap<>();
+        first.put("MINT", new String[]{"eq:exact:Amsterdam", "eq:exact:Utrecht"});
+        first.put("VALUEd", new String[]{"eq:1:2"});
+
+        Map<String, String[]> second = new LinkedHashMap<>();
+        second.put("VALUEd[]", new String[]{"eq:1.000:2"});
+        second.put("MINT[]", new String[]{"eq:exact:utrecht", "eq:exact:Amsterdam", "eq:exact:Utrecht"});
+
+        assertEquals(QueryPlan.compile(first).getKey(), QueryPlan.compile(second).getKey());
+
+        second.put("AUTHORITY", new String[]{"eq:exact:Holland"});
+        assertNotEquals(QueryPlan.compile(first).getKey(), QueryPlan.compile(second).getKey());
+    }
+
+    /**
+     * Executes a plan with only a condition on the period.
+     *
+     * @param from  The first year, or null.
+     * @param to    The last year, or null.
+     * @param years How to determine which periods are valid, or null.
+     * @return The matching records.
+     */
+    private RecordSelection period(String from, String to, String years) {
+        Map<String, String[]> params = new LinkedHashMap<>();
+        if (from != null)
+            params.put("from", new String[]{from});
+        if (to != null)
+            params.put("to", new String[]{to});
+        if (years != null)
+            params.put("years", new String[]{years});
+        return QueryPlan.compile(params).execute(store);
+    }
+
+    /**
+     * Asserts that the given request parameters are rejected.
+     *
+     * @param namesAndValues The names of the parameters, each followed by its value.
+     */
+    private static void assertInvalid(String... namesAndValues) {
+        Map<String, String[]> params = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2)
+            params.put(namesAndValues[i], new String[]{namesAndValues[i + 1]});
+
+        try {
+            QueryPlan.compile(params);
+            fail("Accepted " + String.join(" ", namesAndValues));
+        }
+        catch (IllegalArgumentException iae) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package org.iish.coins.record;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the partial sort of the records for the first page of the table.
+ */
+public class RecordOrderTest {
+    private final RecordStore store = TestRecords.random(5000, 7);
+
+    /**
+     * The first records equal the first records of a full sort, for any number of records.
+     */
+    @Test
+    public void testTopK() {
+        RecordOrder order = RecordOrder.parse("-MINT, QTTYcoins,DATEfrom");
+        int[] sorted = Arrays.stream(TestRecords.rows(TestRecords.all(store))).boxed()
+                .sorted(Comparator.<Integer, String>comparing(row -> store.getString(Column.MINT, row),
+                                Comparator.nullsFirst(Comparator.<String>naturalOrder()).reversed())
+                        .thenComparingLong(row -> store.getUnscaled(Column.QUANTITY, row))
+                        .thenComparingInt(row -> store.getEpochDay(Column.DATE_FROM, row))
+                        .thenComparingInt(row -> row))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        for (int count : new int[]{0, 1, 2, 10, 100, 4999, 5000, 6000}) {
+            int[] first = TestRecords.rows(order.getFirst(TestRecords.all(store), count));
+            assertArrayEquals("First " + count, Arrays.copyOf(sorted, Math.min(count, sorted.length)), first);
+        }
+    }
+
+    /**
+     * Only a selection of the records is sorted, keeping the columns of the selection.
+     */
+    @Test
+    public void testSelection() {
+        RecordSelection selection = TestRecords.all(store).slice(100, 200)
+                .project(new Column[]{Column.MINT}, false);
+        RecordSelection first = RecordOrder.parse("-UID").getFirst(selection, 3);
+
+        assertArrayEquals(new Column[]{Column.MINT}, first.getColumns());
+        assertArrayEquals(new int[]{199, 198, 197}, TestRecords.rows(first));
+    }
+
+    /**
+     * An unknown field cannot be sorted on, and no sort order gives no order.
+     */
+    @Test
+    public void testParse() {
+        assertNull(RecordOrder.parse(null));
+        assertNull(RecordOrder.parse(" "));
+        assertEquals("-MINT,QTTYcoins", RecordOrder.parse("-MINT, QTTYcoins").toString());
+
+        try {
+            RecordOrder.parse("-Mint");
+            fail("Accepted an unknown field");
+        }
+        catch (IllegalArgumentException iae) {
+            // Expected
+        }
+    }
+}
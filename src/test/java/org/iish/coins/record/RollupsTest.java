@@ -0,0 +1,103 @@
+package org.iish.coins.record;
+
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the chart series answered from the rollups equal the series aggregated from the records themselves.
+ */
+public class RollupsTest {
+    private final RecordStore store = TestRecords.random(3000, 11);
+    private final Rollups rollups = Rollups.build(store, Arrays.asList(Column.MINT, Column.AUTHORITY));
+
+    /**
+     * Every query answered from a rollup gives the same series as the scan of the records.
+     */
+    @Test
+    public void testRollupEqualsScan() {
+        List<SeriesAggregator> aggregators = Arrays.asList(
+                new SeriesAggregator("year", "total", ""),
+                new SeriesAggregator("year", "QTTYcoins", ""),
+                new SeriesAggregator("year", "VALUEd", "total"),
+                new SeriesAggregator("year", "VALUEd", "MINT"),
+                new SeriesAggregator("year", "QTTYcoins", "AUTHORITY"),
+                new SeriesAggregator("year", "total", "MINT"));
+
+        List<Map<String, String[]>> queries = Arrays.asList(
+                Collections.emptyMap(),
+                params("MINT", "eq:exact:Utrecht", "MINT", "eq:exact:dordrecht"),
+                params("MINT", "ne:exact:Amsterdam"),
+                params("AUTHORITY", "eq:exact:Holland"),
+                params("from", "1400", "to", "1600"),
+                params("from", "1400", "to", "1600", "years", "complete", "AUTHORITY", "ne:exact:Zeeland"));
+
+        int answered = 0;
+        for (SeriesAggregator aggregator : aggregators) {
+            for (Map<String, String[]> query : queries) {
+                QueryPlan plan = QueryPlan.compile(query);
+                List<SeriesPoint> rolledUp = rollups.aggregate(aggregator, plan);
+                if (rolledUp != null) {
+                    assertSeriesEquals(aggregator + " " + plan, aggregator.aggregate(plan.execute(store)), rolledUp);
+                    answered++;
+                }
+            }
+        }
+        assertTrue(answered > queries.size());
+    }
+
+    /**
+     * Queries which a rollup cannot answer are left to the scan of the records.
+     */
+    @Test
+    public void testNotAnswerable() {
+        QueryPlan all = QueryPlan.compile(Collections.emptyMap());
+        assertNull(rollups.aggregate(new SeriesAggregator("MINT", "total", ""), all));
+        assertNull(rollups.aggregate(new SeriesAggregator("year", "MINT", ""), all));
+        assertNull(rollups.aggregate(new SeriesAggregator("year", "total", "UID"), all));
+
+        SeriesAggregator byYear = new SeriesAggregator("year", "total", "");
+        assertNull(rollups.aggregate(byYear, QueryPlan.compile(params("MINT", "eq:ctns:recht"))));
+        assertNull(rollups.aggregate(byYear, QueryPlan.compile(params("VALUEd", "ne:1:0"))));
+        assertNull(rollups.aggregate(byYear, QueryPlan.compile(params("from", "1505", "to", "1510"))));
+        assertNull(rollups.aggregate(byYear,
+                QueryPlan.compile(params("MINT", "eq:exact:Utrecht", "AUTHORITY", "eq:exact:Holland"))));
+    }
+
+    /**
+     * Creates request parameters; a parameter may be given several times to give it several values.
+     *
+     * @param namesAndValues The names of the parameters, each followed by a value.
+     * @return The request parameters.
+     */
+    private static Map<String, String[]> params(String... namesAndValues) {
+        Map<String, List<String>> values = new LinkedHashMap<>();
+        for (int i = 0; i < namesAndValues.length; i += 2)
+            values.computeIfAbsent(namesAndValues[i], name -> new ArrayList<>()).add(namesAndValues[i + 1]);
+
+        Map<String, String[]> params = new LinkedHashMap<>();
+        values.forEach((name, value) -> params.put(name, value.toArray(new String[0])));
+        return params;
+    }
+
+    /**
+     * Asserts that two series are equal, up to rounding errors of the totals.
+     *
+     * @param message  The message on failure.
+     * @param expected The expected series.
+     * @param actual   The actual series.
+     */
+    private static void assertSeriesEquals(String message, List<SeriesPoint> expected, List<SeriesPoint> actual) {
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(message, expected.get(i).getX(), actual.get(i).getX());
+            assertEquals(message, expected.get(i).getTotals().keySet(), actual.get(i).getTotals().keySet());
+            for (Map.Entry<String, Double> total : expected.get(i).getTotals().entrySet()) {
+                assertEquals(message + " " + total.getKey(), total.getValue(),
+                        actual.get(i).getTotals().get(total.getKey()), 1e-6 * Math.abs(total.getValue()));
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package org.iish.coins.record;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Builds small record stores for the tests, one row at a time.
+ */
+class TestRecords {
+    private static final String[] MINTS = {"Amsterdam", "Dordrecht", "Utrecht", "Dordrecht/Utrecht?", "Middelburg"};
+    private static final String[] AUTHORITIES = {"Holland", "Utrecht", "Zeeland"};
+
+    private final RecordStore.Builder builder = new RecordStore.Builder();
+    private int row = -1;
+
+    /**
+     * Adds a record without any values.
+     *
+     * @return This builder.
+     */
+    TestRecords row() {
+        row = builder.addRow();
+        return this;
+    }
+
+    /**
+     * Sets a value of the last added record.
+     *
+     * @param column The column.
+     * @param value  The value, formatted as in the CSV (with dates as 'YYYY-MM-DD'), or null.
+     * @return This builder.
+     */
+    TestRecords with(Column column, String value) {
+        switch (column.getType()) {
+            case STRING:
+                builder.setString(column, row, value);
+                break;
+            case DATE:
+                builder.setDate(column, row, (value != null) ? LocalDate.parse(value) : null);
+                break;
+            case DECIMAL:
+                builder.setDecimal(column, row, (value != null) ? new BigDecimal(value) : null);
+                break;
+        }
+        return this;
+    }
+
+    /**
+     * Adds a record with a period.
+     *
+     * @param mint      The mint house, or null.
+     * @param authority The authority, or null.
+     * @param from      The start of the period, or null.
+     * @param to        The end of the period, or null.
+     * @param quantity  The quantity of coins, or null.
+     * @return This builder.
+     */
+    TestRecords row(String mint, String authority, String from, String to, String quantity) {
+        return row()
+                .with(Column.MINT, mint)
+                .with(Column.AUTHORITY, authority)
+                .with(Column.DATE_FROM, from)
+                .with(Column.DATE_TO, to)
+                .with(Column.QUANTITY, quantity);
+    }
+
+    /**
+     * Builds the store with all added records.
+     *
+     * @return The store.
+     */
+    RecordStore build() {
+        return builder.build();
+    }
+
+    /**
+     * Builds a store of random records, with some values missing.
+     *
+     * @param size The number of records.
+     * @param seed The seed of the random values.
+     * @return The store.
+     */
+    static RecordStore random(int size, long seed) {
+        Random random = new Random(seed);
+        TestRecords records = new TestRecords();
+        for (int i = 0; i < size; i++) {
+            LocalDate from = LocalDate.of(1500, 1, 1).plusDays(random.nextInt(20 * 365));
+            LocalDate to = from.plusDays(random.nextInt(3 * 365));
+            records.row()
+                    .with(Column.ID, "R" + i)
+                    .with(Column.MINT, (random.nextInt(10) > 0) ? MINTS[random.nextInt(MINTS.length)] : null)
+                    .with(Column.AUTHORITY, AUTHORITIES[random.nextInt(AUTHORITIES.length)])
+                    .with(Column.DATE_FROM, (random.nextInt(20) > 0) ? from.toString() : null)
+                    .with(Column.DATE_TO, to.toString())
+                    .with(Column.QUANTITY, (random.nextInt(5) > 0) ? String.valueOf(random.nextInt(10000)) : null)
+                    .with(Column.VALUE, (random.nextInt(5) > 0) ? (random.nextInt(5000) + ".125") : null);
+        }
+        return records.build();
+    }
+
+    /**
+     * Selects all records of the given store.
+     *
+     * @param store The store.
+     * @return All records, in the order of their rows.
+     */
+    static RecordSelection all(RecordStore store) {
+        return new RecordSelection(store, IntStream.range(0, store.size()).toArray());
+    }
+
+    /**
+     * Executes the query given by a single request parameter.
+     *
+     * @param store The records.
+     * @param name  The name of the parameter.
+     * @param value The value of the parameter.
+     * @return The matching rows.
+     */
+    static int[] query(RecordStore store, String name, String value) {
+        return rows(QueryPlan.compile(Collections.singletonMap(name, new String[]{value})).execute(store));
+    }
+
+    /**
+     * Returns the rows of the given records.
+     *
+     * @param records The records.
+     * @return The rows, in the order of the records.
+     */
+    static int[] rows(RecordSelection records) {
+        return IntStream.range(0, records.size()).map(records::getRow).toArray();
+    }
+}
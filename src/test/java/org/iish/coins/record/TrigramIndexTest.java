@@ -0,0 +1,29 @@
+package org.iish.coins.record;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the trigram index of the dictionary of a string column against a scan of the distinct values.
+ */
+public class TrigramIndexTest {
+    private final RecordStore store = TestRecords.random(2000, 3);
+
+    /**
+     * Containing a value finds the same values as comparing every value, for values of any length.
+     */
+    @Test
+    public void testContaining() {
+        String[] dictionary = store.getDictionary(Column.MINT);
+        for (String value : new String[]{"", "d", "re", "rec", "recht", "t/u", "echt?", "dam", "amsterdamx", "zzz"}) {
+            int[] codes = store.getTrigramIndex(Column.MINT).getCodesContaining(value);
+            int expected = 0;
+            for (int code = 0; code < dictionary.length; code++) {
+                if (dictionary[code].toLowerCase().contains(value))
+                    assertEquals(value, code, codes[expected++]);
+            }
+            assertEquals(value, expected, codes.length);
+        }
+    }
+}